@@ -0,0 +1,53 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.utils.Json;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Detection of the failed responses
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CheckResponseBenchmark {
+
+    private Json okResponse;
+    private Json failedResponse;
+
+    @Setup
+    public void setup() {
+        okResponse = Payloads.okResponse();
+        failedResponse = Payloads.failedResponse();
+    }
+
+    @Benchmark
+    public Json okResponse() {
+        FreshbooksEndpoint.checkFailedResponses(okResponse);
+        return okResponse;
+    }
+
+    @Benchmark
+    public Object failedResponse() {
+        try {
+            FreshbooksEndpoint.checkFailedResponses(failedResponse);
+            return failedResponse;
+        } catch (EndpointException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.utils.Json;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>Typical Freshbooks payloads used by the benchmarks
+ */
+class Payloads {
+
+    private Payloads() {
+    }
+
+    static Json client() {
+        return Json.map()
+                .set("first_name", "Jane")
+                .set("last_name", "Doe")
+                .set("organization", "ABC Corp")
+                .set("email", "janedoe@example.com")
+                .set("username", "janedoe")
+                .set("work_phone", "(555) 123-4567")
+                .set("language", "en")
+                .set("currency_code", "USD")
+                .set("notes", "Prefers email over phone")
+                .set("p_street1", "123 Fake St.")
+                .set("p_city", "New York")
+                .set("p_state", "New York")
+                .set("p_country", "United States")
+                .set("p_code", "553132");
+    }
+
+    static Json invoice(int lines) {
+        final Json items = Json.list();
+        for (int i = 0; i < lines; i++) {
+            items.push(Json.map()
+                    .set("name", "Product " + i)
+                    .set("description", "Description of the product " + i)
+                    .set("unit_cost", "10.00")
+                    .set("quantity", "2")
+                    .set("tax1_name", "GST")
+                    .set("tax1_percent", "5")
+                    .set("type", "Item"));
+        }
+        return Json.map()
+                .set("client_id", "13")
+                .set("number", "FB00004")
+                .set("status", "draft")
+                .set("date", "2007-06-23")
+                .set("po_number", "2314")
+                .set("discount", "10")
+                .set("notes", "Due upon receipt.")
+                .set("currency_code", "CAD")
+                .set("terms", "Payment due in 30 days.")
+                .set("lines", Json.map().set("line", items));
+    }
+
+    /**
+     * @param items number of invoices in the page
+     * @return XML response of 'invoice.list'
+     */
+    static byte[] invoiceList(int items) {
+        final StringBuilder xml = new StringBuilder(items * 900 + 256);
+        xml.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>")
+                .append("<response xmlns=\"http://www.freshbooks.com/api/\" status=\"ok\">")
+                .append("<invoices page=\"1\" per_page=\"").append(items).append("\" pages=\"1\" total=\"").append(items).append("\">");
+        for (int i = 0; i < items; i++) {
+            xml.append("<invoice>")
+                    .append("<invoice_id>").append(i + 1).append("</invoice_id>")
+                    .append("<client_id>13</client_id>")
+                    .append("<number>FB").append(i + 1).append("</number>")
+                    .append("<amount>45.00</amount><currency_code>USD</currency_code><language>en</language>")
+                    .append("<amount_outstanding>0</amount_outstanding><status>paid</status>")
+                    .append("<date>2007-06-23 00:00:00</date><folder>active</folder>")
+                    .append("<po_number></po_number><discount>0</discount><notes>Due upon receipt.</notes>")
+                    .append("<terms>Payment due in 30 days.</terms>")
+                    .append("<links><client_view>https://sample.freshbooks.com/inv/108-1-r</client_view>")
+                    .append("<view>https://sample.freshbooks.com/invoices/108</view>")
+                    .append("<edit>https://sample.freshbooks.com/invoices/108/edit</edit></links>")
+                    .append("<first_name>John</first_name><last_name>Smith</last_name><organization>ABC Corp</organization>")
+                    .append("<p_street1>123 Fake St.</p_street1><p_city>New York</p_city><p_country>United States</p_country>")
+                    .append("<updated>2009-08-12 09:00:00</updated>")
+                    .append("</invoice>");
+        }
+        xml.append("</invoices></response>");
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static Json okResponse() {
+        return Json.map().set("response", Json.map()
+                .set("@status", "ok")
+                .set("invoice", invoice(3)));
+    }
+
+    static Json failedResponse() {
+        return Json.map().set("response", Json.map()
+                .set("@status", "fail")
+                .set("error", "Invoice not found.")
+                .set("code", "50010"));
+    }
+}
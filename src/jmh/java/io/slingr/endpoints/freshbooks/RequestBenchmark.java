@@ -0,0 +1,60 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.utils.Json;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.stream.XMLStreamException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Building and serialization of the requests sent to Freshbooks
+ *
+ * <p>The '*FromOperation' benchmarks use the prebuilt envelopes of the operations, the other ones
+ * wrap the parameters and write the whole document.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestBenchmark {
+
+    private Json client;
+    private Json invoice;
+
+    @Setup
+    public void setup() {
+        client = Payloads.client();
+        invoice = Payloads.invoice(10);
+    }
+
+    @Benchmark
+    public byte[] clientXml() throws XMLStreamException {
+        return XmlRequestWriter.write("client.create", Json.map().set("client", client));
+    }
+
+    @Benchmark
+    public byte[] invoiceXml() throws XMLStreamException {
+        return XmlRequestWriter.write("invoice.create", Json.map().set("invoice", invoice));
+    }
+
+    @Benchmark
+    public byte[] clientXmlFromOperation() throws XMLStreamException {
+        return XmlRequestWriter.write(Operation.CLIENT_CREATE.envelope(), client);
+    }
+
+    @Benchmark
+    public byte[] invoiceXmlFromOperation() throws XMLStreamException {
+        return XmlRequestWriter.write(Operation.INVOICE_CREATE.envelope(), invoice);
+    }
+}
@@ -0,0 +1,51 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.utils.Json;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Parsing of the list responses received from Freshbooks
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int items;
+
+    private byte[] listResponse;
+
+    @Setup
+    public void setup() {
+        listResponse = Payloads.invoiceList(items);
+    }
+
+    @Benchmark
+    public Json parseList() throws XMLStreamException {
+        return XmlResponseReader.read(new ByteArrayInputStream(listResponse), "invoices", "invoice", null);
+    }
+
+    @Benchmark
+    public Json parseListWithCallback(Blackhole blackhole) throws XMLStreamException {
+        return XmlResponseReader.read(new ByteArrayInputStream(listResponse), "invoices", "invoice", blackhole::consume);
+    }
+}
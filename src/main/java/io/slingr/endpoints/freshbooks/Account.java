@@ -0,0 +1,113 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.utils.Json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * <p>Resources of one Freshbooks account
+ *
+ * <p>Each account has its own connection pool, rate limiter, caches, sync state, async permits,
+ * retry and hedge budgets, and circuit breakers and bulkheads per method group, so an account that
+ * is slow, throttled or failing only waits on its own resources and cannot starve, spend the
+ * budgets or open the circuits of the other ones.
+ */
+class Account implements Closeable {
+    private final String name;
+    private final FreshbooksClient client;
+    private final RateLimiter rateLimiter;
+    private final ExpiringCache<String, Json> currenciesCache;
+    private final ExpiringCache<String, Json> entityCache;
+    private final DeltaSync deltaSync;
+    private final IdempotencyKeys idempotencyKeys;
+    private final Retrier retrier;
+    private final Hedger hedger;
+    private final AsyncRunner async;
+    private final Map<Operation.Entity, CircuitBreaker> breakers;
+    private final Map<Operation.Entity, Bulkhead> bulkheads;
+
+    Account(String name, FreshbooksClient client, RateLimiter rateLimiter, ExpiringCache<String, Json> currenciesCache,
+            ExpiringCache<String, Json> entityCache, DeltaSync deltaSync, IdempotencyKeys idempotencyKeys,
+            Retrier retrier, Hedger hedger, AsyncRunner async,
+            Map<Operation.Entity, CircuitBreaker> breakers, Map<Operation.Entity, Bulkhead> bulkheads) {
+        this.name = name;
+        this.client = client;
+        this.rateLimiter = rateLimiter;
+        this.currenciesCache = currenciesCache;
+        this.entityCache = entityCache;
+        this.deltaSync = deltaSync;
+        this.idempotencyKeys = idempotencyKeys;
+        this.retrier = retrier;
+        this.hedger = hedger;
+        this.async = async;
+        this.breakers = breakers;
+        this.bulkheads = bulkheads;
+    }
+
+    /**
+     * @return name of the account, the subdomain of the Freshbooks API
+     */
+    String name() {
+        return name;
+    }
+
+    FreshbooksClient client() {
+        return client;
+    }
+
+    RateLimiter rateLimiter() {
+        return rateLimiter;
+    }
+
+    ExpiringCache<String, Json> currenciesCache() {
+        return currenciesCache;
+    }
+
+    ExpiringCache<String, Json> entityCache() {
+        return entityCache;
+    }
+
+    DeltaSync deltaSync() {
+        return deltaSync;
+    }
+
+    IdempotencyKeys idempotencyKeys() {
+        return idempotencyKeys;
+    }
+
+    Retrier retrier() {
+        return retrier;
+    }
+
+    /**
+     * @return hedger of the reads, null when the hedged reads are disabled
+     */
+    Hedger hedger() {
+        return hedger;
+    }
+
+    AsyncRunner async() {
+        return async;
+    }
+
+    /**
+     * @return circuit breaker of the method group
+     */
+    CircuitBreaker breaker(Operation.Entity group) {
+        return breakers.get(group);
+    }
+
+    /**
+     * @return bulkhead of the method group
+     */
+    Bulkhead bulkhead(Operation.Entity group) {
+        return bulkheads.get(group);
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+    }
+}
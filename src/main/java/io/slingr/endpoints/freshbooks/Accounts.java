@@ -0,0 +1,109 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * <p>Accounts served by the endpoint, the account of each call is selected with the 'account'
+ * option and the calls without it use the default account
+ */
+class Accounts implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(Accounts.class);
+
+    private final Account defaultAccount;
+    private final Map<String, Account> accounts;
+
+    /**
+     * @param accounts accounts by name, the first one is the default account
+     */
+    Accounts(Collection<Account> accounts) {
+        final Map<String, Account> map = new LinkedHashMap<>();
+        for (Account account : accounts) {
+            map.put(account.name().toLowerCase(), account);
+        }
+        this.accounts = Collections.unmodifiableMap(map);
+        this.defaultAccount = accounts.iterator().next();
+    }
+
+    /**
+     * Parses the credentials of the additional accounts
+     *
+     * @param value pairs 'account:token' separated by commas, spaces or new lines, can be null
+     * @return tokens by account name, in the given order
+     * @throws EndpointException exception if a pair is not valid
+     */
+    static Map<String, String> parseCredentials(String value) throws EndpointException {
+        final Map<String, String> credentials = new LinkedHashMap<>();
+        if (value == null) {
+            return credentials;
+        }
+        for (String pair : value.split("[,;\\s]+")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            final int separator = pair.indexOf(':');
+            if (separator <= 0 || separator == pair.length() - 1) {
+                // the pair is not logged, it contains the token
+                throw EndpointException.permanent(ErrorCode.ARGUMENT, "Invalid account credentials, 'account:token' pairs are expected");
+            }
+            credentials.put(pair.substring(0, separator).trim().toLowerCase(), pair.substring(separator + 1).trim());
+        }
+        return credentials;
+    }
+
+    /**
+     * @param name name of the account, null selects the default account
+     * @return account with the given name
+     * @throws EndpointException exception if the account is not configured
+     */
+    Account get(String name) throws EndpointException {
+        if (name == null || name.trim().isEmpty()) {
+            return defaultAccount;
+        }
+        final Account account = accounts.get(name.trim().toLowerCase());
+        if (account == null) {
+            throw EndpointException.permanent(ErrorCode.ARGUMENT, String.format("Account [%s] is not configured on the endpoint", name));
+        }
+        return account;
+    }
+
+    Account defaultAccount() {
+        return defaultAccount;
+    }
+
+    Collection<Account> all() {
+        return accounts.values();
+    }
+
+    /**
+     * @return sum of the value over all the accounts, used by the gauges
+     */
+    double sum(ToDoubleFunction<Account> value) {
+        double sum = 0;
+        for (Account account : accounts.values()) {
+            sum += value.applyAsDouble(account);
+        }
+        return sum;
+    }
+
+    @Override
+    public void close() {
+        for (Account account : accounts.values()) {
+            try {
+                account.close();
+            } catch (IOException e) {
+                logger.warn(String.format("Error closing the FreshBooks client of account [%s]", account.name()), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * <p>Executes functions in background and sends the result as an event
+ *
+ * <p>The caller receives the correlation id straight away, the result is sent later on the
+ * 'asyncResult' event together with the same id. The calls are rejected when too many of them
+ * are pending, so a slow Freshbooks does not pile up an unbounded number of tasks.
+ */
+class AsyncRunner {
+    private static final Logger logger = LoggerFactory.getLogger(AsyncRunner.class);
+
+    static final String RESULT_EVENT = "asyncResult";
+
+    private final ExecutorService executor;
+    private final int maxPending;
+    private final Semaphore pending;
+    private final ResultSender sender;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param executor executor where the functions are executed
+     * @param maxPending maximum number of calls that can be waiting or running at the same time
+     * @param sender function that sends the result to the app
+     */
+    AsyncRunner(ExecutorService executor, int maxPending, ResultSender sender) {
+        this.executor = executor;
+        this.maxPending = Math.max(1, maxPending);
+        this.pending = new Semaphore(this.maxPending);
+        this.sender = sender;
+    }
+
+    /**
+     * Submits the function and returns without waiting for it
+     *
+     * @param function name of the function, it is included on the result
+     * @param correlationId id of the call, a random one is generated when it is null
+     * @param params parameters of the function
+     * @param operation operation executed in background
+     * @return correlation id and name of the accepted call
+     * @throws EndpointException exception if there are too many calls pending
+     */
+    Json submit(String function, String correlationId, Json params, Function<Json, Json> operation) throws EndpointException {
+        final String id = correlationId != null ? correlationId : UUID.randomUUID().toString();
+        if (!pending.tryAcquire()) {
+            rejected.incrementAndGet();
+            throw EndpointException.retryable(ErrorCode.GENERAL, String.format("Too many async calls in progress [%s]", maxPending))
+                    .returnCode(429);
+        }
+        try {
+            executor.submit(() -> {
+                try {
+                    run(function, id, params, operation);
+                } finally {
+                    pending.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.release();
+            rejected.incrementAndGet();
+            throw EndpointException.retryable(ErrorCode.GENERAL, "The endpoint is stopping", e);
+        }
+        submitted.incrementAndGet();
+        return Json.map()
+                .set("correlationId", id)
+                .set("function", function)
+                .set("status", "accepted");
+    }
+
+    private void run(String function, String id, Json params, Function<Json, Json> operation) {
+        final Json result = Json.map()
+                .set("correlationId", id)
+                .set("function", function);
+        try {
+            result.set("success", true).set("response", operation.apply(params));
+            succeeded.incrementAndGet();
+        } catch (RuntimeException e) {
+            result.set("success", false).set("error", BulkExecutor.error(e));
+            failed.incrementAndGet();
+        }
+        try {
+            sender.send(RESULT_EVENT, result, id);
+        } catch (RuntimeException e) {
+            logger.warn(String.format("Error sending the result of [%s] with id [%s]", function, id), e);
+        }
+    }
+
+    int pending() {
+        return maxPending - pending.availablePermits();
+    }
+
+    /**
+     * @return counters of the async calls
+     */
+    Json stats() {
+        return Json.map()
+                .set("pending", pending())
+                .set("maxPending", maxPending)
+                .set("submitted", submitted.get())
+                .set("succeeded", succeeded.get())
+                .set("failed", failed.get())
+                .set("rejected", rejected.get());
+    }
+
+    /**
+     * Sends the result of a call to the app
+     */
+    interface ResultSender {
+        void send(String event, Json data, String correlationId);
+    }
+}
@@ -0,0 +1,130 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * <p>Executes the same operation over a list of items with a limited number of concurrent calls
+ *
+ * <p>Each item gets its own result, a failed item does not stop the rest of the batch.
+ */
+class BulkExecutor {
+
+    private final ExecutorService executor;
+    private final int concurrency;
+
+    BulkExecutor(ExecutorService executor, int concurrency) {
+        this.executor = executor;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * Executes the operation over all the items
+     *
+     * @param items items to process
+     * @param operation operation executed for each item
+     * @return summary with one result per item, in the same order than the items
+     */
+    Json execute(List<Json> items, Function<Json, Json> operation) {
+        final Json[] results = new Json[items.size()];
+        final AtomicInteger nextItem = new AtomicInteger();
+
+        final List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < Math.min(concurrency, items.size()); i++) {
+            workers.add(executor.submit(() -> {
+                int index;
+                while ((index = nextItem.getAndIncrement()) < items.size()) {
+                    results[index] = executeItem(index, items.get(index), operation);
+                }
+            }));
+        }
+        try {
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw EndpointException.permanent(ErrorCode.GENERAL, "Interrupted while executing the batch", e);
+        } catch (ExecutionException e) {
+            throw EndpointException.permanent(ErrorCode.GENERAL, String.format("Error executing the batch [%s]", e.getCause()), e.getCause());
+        }
+
+        int failed = 0;
+        final Json list = Json.list();
+        for (Json result : results) {
+            if (!result.bool("success")) {
+                failed++;
+            }
+            list.push(result);
+        }
+        return Json.map()
+                .set("total", results.length)
+                .set("succeeded", results.length - failed)
+                .set("failed", failed)
+                .set("results", list);
+    }
+
+    private static Json executeItem(int index, Json item, Function<Json, Json> operation) {
+        final Json result = Json.map().set("index", index);
+        try {
+            return result.set("success", true)
+                    .set("response", operation.apply(item));
+        } catch (RuntimeException e) {
+            return result.set("success", false)
+                    .set("error", error(e));
+        }
+    }
+
+    /**
+     * @return message and additional info of the exception
+     */
+    static Json error(RuntimeException e) {
+        if (e instanceof EndpointException) {
+            return Json.map()
+                    .set("message", e.getMessage())
+                    .setIfNotNull("additionalInfo", ((EndpointException) e).getAdditionalInfo());
+        }
+        return Json.map().set("message", String.valueOf(e.getMessage()));
+    }
+
+    /**
+     * Reads the items of a bulk request, which can be a list or a map with an 'items' list. The
+     * 'account' option of the map is copied to the items that do not select an account.
+     *
+     * @param request request received by the function
+     * @return items of the request
+     * @throws EndpointException exception if the request does not contain a list of items
+     */
+    static List<Json> items(Json request) throws EndpointException {
+        final List<?> values;
+        if (request != null && request.isList()) {
+            values = request.toList();
+        } else if (request != null && request.contains("items") && request.object("items") instanceof List) {
+            values = (List<?>) request.object("items");
+        } else {
+            throw EndpointException.permanent(ErrorCode.ARGUMENT, "A list of items is required");
+        }
+
+        final Object account = request.isList() ? null : request.object(RequestOptions.ACCOUNT);
+        final List<Json> items = new ArrayList<>(values.size());
+        for (Object value : values) {
+            final Json item = Json.fromObject(value);
+            if (item == null) {
+                throw EndpointException.permanent(ErrorCode.ARGUMENT, String.format("Invalid item [%s]", value));
+            }
+            items.add(account != null && !item.contains(RequestOptions.ACCOUNT)
+                    ? Json.map().merge(item).set(RequestOptions.ACCOUNT, account)
+                    : item);
+        }
+        return items;
+    }
+}
@@ -0,0 +1,118 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * <p>Limits the calls in flight of a group of Freshbooks methods
+ *
+ * <p>Each group has its own slots, so a group with slow calls, like the lists walked by an export,
+ * uses up its slots but does not block the threads of the other groups. A call waits a short time
+ * for a free slot and is rejected when none is released.
+ *
+ * <p>The calls of the endpoint that fan out over many pages or items are expected to fill the
+ * slots of their group, so they wait for a slot with {@link #waitForSlot(Supplier, long)}
+ * instead of failing as a whole when one of their requests is rejected.
+ */
+class Bulkhead {
+    static final int DEFAULT_MAX_CONCURRENT = 10;
+    static final int DEFAULT_MAX_WAIT = 500;
+    static final long FAN_OUT_MAX_WAIT = TimeUnit.MINUTES.toMillis(1);
+
+    private static final String COMPONENT = "bulkhead";
+    private static final long PAUSE = 20;
+
+    private final String name;
+    private final int maxConcurrent;
+    private final long maxWaitMillis;
+    private final Semaphore slots;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param name name of the group of methods
+     * @param maxConcurrent maximum number of calls in flight
+     * @param maxWaitMillis time a call waits for a free slot
+     */
+    Bulkhead(String name, int maxConcurrent, long maxWaitMillis) {
+        this.name = name;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxWaitMillis = Math.max(0, maxWaitMillis);
+        this.slots = new Semaphore(this.maxConcurrent, true);
+    }
+
+    /**
+     * Takes a slot, it has to be released with {@link #release()} when the call ends
+     *
+     * @throws EndpointException retryable exception if there is no free slot
+     */
+    void acquire() throws EndpointException {
+        final boolean acquired;
+        try {
+            acquired = slots.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw EndpointException.permanent(ErrorCode.GENERAL, "Interrupted while waiting for a free slot", e);
+        }
+        if (!acquired) {
+            rejected.incrementAndGet();
+            throw Failures.rejected(COMPONENT, String.format("Too many FreshBooks %s calls in progress [%s]", name, maxConcurrent), 429);
+        }
+    }
+
+    /**
+     * Executes a call, repeating it while it is rejected because a bulkhead is full. The rejected
+     * calls were not sent, so they can always be repeated.
+     *
+     * @param call call to execute
+     * @param maxWaitMillis time after which the rejection is thrown
+     * @return response of the call
+     * @throws EndpointException exception of the call, or the rejection once the time is over
+     */
+    static Json waitForSlot(Supplier<Json> call, long maxWaitMillis) throws EndpointException {
+        final long deadline = System.currentTimeMillis() + maxWaitMillis;
+        while (true) {
+            try {
+                return call.get();
+            } catch (EndpointException e) {
+                if (!Failures.isRejectedBy(e, COMPONENT) || System.currentTimeMillis() >= deadline) {
+                    throw e;
+                }
+            }
+            try {
+                Thread.sleep(PAUSE);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw EndpointException.permanent(ErrorCode.GENERAL, "Interrupted while waiting for a free slot", e);
+            }
+        }
+    }
+
+    void release() {
+        slots.release();
+    }
+
+    int inFlight() {
+        return maxConcurrent - slots.availablePermits();
+    }
+
+    long rejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return counters of the bulkhead
+     */
+    Json stats() {
+        return Json.map()
+                .set("maxConcurrent", maxConcurrent)
+                .set("inFlight", inFlight())
+                .set("rejected", rejected.get());
+    }
+}
@@ -0,0 +1,111 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.utils.Json;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>Canonical text of a Json, where the keys of the maps are sorted
+ *
+ * <p>The same content with the keys in a different order generates the same text. Each value is
+ * tagged with its type and the strings are prefixed with their length, so the text of a value
+ * that contains separators can not be confused with the text of other content.
+ *
+ * <p>It also makes deep copies of a Json, for the values that are shared between callers.
+ */
+class CanonicalJson {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private CanonicalJson() {
+    }
+
+    static String toString(Object value) {
+        final StringBuilder builder = new StringBuilder();
+        append(builder, value);
+        return builder.toString();
+    }
+
+    /**
+     * @return 64-bit FNV-1a hash of the canonical text
+     */
+    static long fingerprint(Object value) {
+        final String text = toString(value);
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * @return copy of the Json where the nested maps and lists are copied too, null if it is null
+     */
+    static Json copy(Json json) {
+        return json != null ? Json.fromObject(copyValue(json)) : null;
+    }
+
+    private static Object copyValue(Object value) {
+        if (value instanceof Json) {
+            final Json json = (Json) value;
+            value = json.isList() ? json.toList() : json.toMap();
+        }
+        if (value instanceof Map) {
+            final Json copy = Json.map();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.set(String.valueOf(entry.getKey()), copyValue(entry.getValue()));
+            }
+            return copy;
+        }
+        if (value instanceof List) {
+            final Json copy = Json.list();
+            for (Object element : (List<?>) value) {
+                copy.push(copyValue(element));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    static void append(StringBuilder builder, Object value) {
+        if (value instanceof Json) {
+            final Json json = (Json) value;
+            value = json.isList() ? json.toList() : json.toMap();
+        }
+        if (value == null) {
+            builder.append('z');
+        } else if (value instanceof Map) {
+            final Map<?, ?> map = (Map<?, ?>) value;
+            final Map<String, Object> sorted = new TreeMap<>();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                sorted.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+            builder.append('{');
+            for (Map.Entry<String, Object> entry : sorted.entrySet()) {
+                appendString(builder, entry.getKey());
+                append(builder, entry.getValue());
+            }
+            builder.append('}');
+        } else if (value instanceof List) {
+            builder.append('[');
+            for (Object element : (List<?>) value) {
+                append(builder, element);
+            }
+            builder.append(']');
+        } else if (value instanceof Number) {
+            builder.append('n').append(value).append(';');
+        } else if (value instanceof Boolean) {
+            builder.append((Boolean) value ? 't' : 'f');
+        } else {
+            builder.append('s');
+            appendString(builder, value.toString());
+        }
+    }
+
+    private static void appendString(StringBuilder builder, String text) {
+        builder.append(text.length()).append(':').append(text);
+    }
+}
@@ -0,0 +1,252 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.utils.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * <p>Detects the records created, updated and deleted on Freshbooks by polling the list methods
+ *
+ * <p>Each poll walks all the pages of the lists and compares the fingerprint of every record
+ * with the one of the previous poll. The first poll only fills the index, so no events are sent
+ * for the records that already existed when the endpoint started.
+ *
+ * <p>A record is reported as deleted when it is missing from two complete polls in a row. The
+ * pages can shift while they are walked, when a record is created or deleted, so a record that
+ * still exists can be missing from one poll. When a page fails, or the total of the list changed
+ * while the pages were walked, the poll does not count as a miss. The events of the created and
+ * updated records can be sent again if the poll fails after sending them.
+ */
+class ChangePoller {
+    private static final Logger logger = LoggerFactory.getLogger(ChangePoller.class);
+
+    static final String CREATED = "created";
+    static final String UPDATED = "updated";
+    static final String DELETED = "deleted";
+
+    static final List<Source> SOURCES = Collections.unmodifiableList(Arrays.asList(
+            new Source(Operation.INVOICE_LIST, "invoiceChanged"),
+            new Source(Operation.CLIENT_LIST, "clientChanged"),
+            new Source(Operation.RECURRING_LIST, "recurringChanged")
+    ));
+
+    private final List<Source> sources;
+    private final PageFetcher pageFetcher;
+    private final BiConsumer<String, Json> eventSender;
+    private final FingerprintIndex[] indexes;
+    // records missing from the last complete poll, they are deleted if they are missing again
+    private final FingerprintIndex[] missing;
+
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong failedPolls = new AtomicLong();
+    private final AtomicLong sentEvents = new AtomicLong();
+    private volatile long lastPollMillis;
+    private volatile long lastPollDuration;
+
+    private ScheduledFuture<?> task;
+
+    /**
+     * @param sources lists that are polled
+     * @param pageFetcher function that executes the list request of one page
+     * @param eventSender function that sends the events to the app, receives the name and the data
+     */
+    ChangePoller(List<Source> sources, PageFetcher pageFetcher, BiConsumer<String, Json> eventSender) {
+        this.sources = sources;
+        this.pageFetcher = pageFetcher;
+        this.eventSender = eventSender;
+        this.indexes = new FingerprintIndex[sources.size()];
+        this.missing = new FingerprintIndex[sources.size()];
+    }
+
+    /**
+     * Schedules the polls with a fixed delay between the end of a poll and the start of the next one
+     *
+     * @param scheduler executor where the polls are executed
+     * @param intervalSeconds seconds between polls
+     */
+    synchronized void start(ScheduledExecutorService scheduler, long intervalSeconds) {
+        if (task == null) {
+            task = scheduler.scheduleWithFixedDelay(this::pollSafely, 0, intervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    synchronized void stop() {
+        if (task != null) {
+            task.cancel(true);
+            task = null;
+        }
+    }
+
+    private void pollSafely() {
+        try {
+            poll();
+        } catch (Exception e) {
+            // an exception would cancel the next executions
+            logger.warn(String.format("Error polling changes on FreshBooks [%s]", e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Polls all the sources once
+     */
+    void poll() {
+        final long start = System.currentTimeMillis();
+        boolean failed = false;
+        for (int i = 0; i < sources.size(); i++) {
+            try {
+                poll(i);
+            } catch (EndpointException e) {
+                failed = true;
+                logger.warn(String.format("Error polling [%s], the changes will be detected on the next poll [%s]",
+                        sources.get(i).operation.method(), e.getMessage()));
+            }
+        }
+        polls.incrementAndGet();
+        if (failed) {
+            failedPolls.incrementAndGet();
+        }
+        lastPollMillis = start;
+        lastPollDuration = System.currentTimeMillis() - start;
+    }
+
+    private void poll(int index) throws EndpointException {
+        final Source source = sources.get(index);
+        final FingerprintIndex previous = indexes[index];
+        final FingerprintIndex suspected = missing[index] != null ? missing[index] : new FingerprintIndex();
+        final FingerprintIndex current = new FingerprintIndex(previous != null ? previous.size() : 0);
+        final Consumer<Json> onItem = record -> {
+            final long id = id(record.string(source.operation.entity().idField()));
+            if (id < 0) {
+                return;
+            }
+            final long fingerprint = CanonicalJson.fingerprint(record);
+            current.put(id, fingerprint);
+            if (previous != null) {
+                if (!previous.contains(id)) {
+                    send(source, CREATED, id, record);
+                } else if (previous.get(id, fingerprint) != fingerprint) {
+                    send(source, UPDATED, id, record);
+                }
+            }
+        };
+
+        int page = 1;
+        int pages;
+        String firstTotal = null;
+        String lastTotal;
+        do {
+            final Json list = ListPager.listElement(pageFetcher.fetch(source, page, onItem), source.operation.entity().collection());
+            if (list == null) {
+                lastTotal = null;
+                break;
+            }
+            pages = ListPager.toInt(list.string("@pages"), 1);
+            lastTotal = list.string("@total");
+            if (page == 1) {
+                firstTotal = lastTotal;
+            }
+        } while (page++ < pages);
+
+        final FingerprintIndex stillMissing = new FingerprintIndex();
+        if (previous != null) {
+            final boolean complete = firstTotal != null && firstTotal.equals(lastTotal);
+            final List<Long> deleted = new ArrayList<>();
+            previous.forEach((id, fingerprint) -> {
+                if (current.contains(id)) {
+                    return;
+                }
+                if (complete && suspected.contains(id)) {
+                    deleted.add(id);
+                } else {
+                    // kept until a second complete poll confirms it is gone, it may be on a page that shifted
+                    current.put(id, fingerprint);
+                    if (complete || suspected.contains(id)) {
+                        stillMissing.put(id, 0);
+                    }
+                }
+            });
+            for (Long id : deleted) {
+                send(source, DELETED, id, null);
+            }
+        }
+        indexes[index] = current;
+        missing[index] = stillMissing;
+    }
+
+    private void send(Source source, String changeType, long id, Json record) {
+        final Json event = Json.map()
+                .set("changeType", changeType)
+                .set("id", String.valueOf(id))
+                .setIfNotNull(source.operation.entity().item(), record);
+        eventSender.accept(source.event, event);
+        sentEvents.incrementAndGet();
+    }
+
+    private static long id(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    long sentEvents() {
+        return sentEvents.get();
+    }
+
+    long failedPolls() {
+        return failedPolls.get();
+    }
+
+    /**
+     * @return counters of the poller
+     */
+    Json stats() {
+        final Json indexed = Json.map();
+        for (int i = 0; i < sources.size(); i++) {
+            indexed.set(sources.get(i).operation.entity().item(), indexes[i] != null ? indexes[i].size() : 0);
+        }
+        return Json.map()
+                .set("polls", polls.get())
+                .set("failedPolls", failedPolls.get())
+                .set("sentEvents", sentEvents.get())
+                .setIfNotNull("lastPoll", lastPollMillis > 0 ? lastPollMillis : null)
+                .set("lastPollDuration", lastPollDuration)
+                .set("indexed", indexed);
+    }
+
+    /**
+     * List method that is polled and event sent for its changes
+     */
+    static class Source {
+        final Operation operation;
+        final String event;
+
+        Source(Operation operation, String event) {
+            this.operation = operation;
+            this.event = event;
+        }
+    }
+
+    /**
+     * Executes the list request of one page, sending the items to the callback
+     */
+    interface PageFetcher {
+        Json fetch(Source source, int page, Consumer<Json> onItem) throws EndpointException;
+    }
+}
@@ -0,0 +1,214 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.utils.Json;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>Circuit breaker over the calls of a group of Freshbooks methods
+ *
+ * <p>The outcome of the last calls is kept in a window of fixed size. When the rate of transient
+ * failures in the window reaches the threshold the circuit opens and the calls fail straight
+ * away, without waiting for the timeout of a server that is not answering. After the open time
+ * the circuit is half open and lets a few trial calls through: it closes if they succeed and
+ * opens again if any of them fails.
+ */
+class CircuitBreaker {
+    static final int DEFAULT_WINDOW_SIZE = 20;
+    static final int DEFAULT_MINIMUM_CALLS = 10;
+    static final int DEFAULT_FAILURE_RATE = 50;
+    static final int DEFAULT_OPEN_SECONDS = 30;
+    static final int DEFAULT_TRIAL_CALLS = 1;
+
+    /**
+     * States of the circuit
+     */
+    enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final String name;
+    private final int minimumCalls;
+    private final int failureRate;
+    private final long openMillis;
+    private final int trialCalls;
+    private final LongSupplier clock;
+    private final Listener listener;
+
+    private final boolean[] window;
+    private int position;
+    private int calls;
+    private int failures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int trialsInFlight;
+    private int trialsSucceeded;
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong opened = new AtomicLong();
+
+    /**
+     * @param name name of the group of methods
+     * @param windowSize number of calls kept to compute the failure rate
+     * @param minimumCalls calls needed in the window before the circuit can open
+     * @param failureRate percentage of failed calls that opens the circuit
+     * @param openMillis time the circuit is open before the trial calls
+     * @param trialCalls calls let through while the circuit is half open
+     * @param clock source of the current time in milliseconds
+     * @param listener receives the changes of state, can be null
+     */
+    CircuitBreaker(String name, int windowSize, int minimumCalls, int failureRate, long openMillis, int trialCalls,
+                   LongSupplier clock, Listener listener) {
+        this.name = name;
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, window.length));
+        this.failureRate = Math.max(1, Math.min(100, failureRate));
+        this.openMillis = Math.max(0, openMillis);
+        this.trialCalls = Math.max(1, trialCalls);
+        this.clock = clock;
+        this.listener = listener;
+    }
+
+    /**
+     * Checks that the circuit lets the call through
+     *
+     * @return true if the call is a trial of the half open circuit, its outcome decides the state
+     * @throws EndpointException retryable exception if the circuit is open
+     */
+    boolean acquire() throws EndpointException {
+        final boolean halfOpened;
+        final boolean trial;
+        final boolean allowed;
+        synchronized (this) {
+            halfOpened = state == State.OPEN && clock.getAsLong() - openedAt >= openMillis;
+            if (halfOpened) {
+                state = State.HALF_OPEN;
+                trialsInFlight = 0;
+                trialsSucceeded = 0;
+            }
+            trial = state == State.HALF_OPEN && trialsInFlight < trialCalls;
+            if (trial) {
+                trialsInFlight++;
+            }
+            allowed = state == State.CLOSED || trial;
+        }
+        if (halfOpened) {
+            fireStateChange(State.OPEN, State.HALF_OPEN);
+        }
+        if (!allowed) {
+            rejected.incrementAndGet();
+            throw Failures.rejected("circuit", String.format("FreshBooks %s methods are failing, the circuit is open", name), 503);
+        }
+        return trial;
+    }
+
+    /**
+     * Records the outcome of a call that went through
+     *
+     * @param trial value returned by {@link #acquire()}
+     * @param failed true if the call failed with a transient error
+     */
+    void record(boolean trial, boolean failed) {
+        final State previous;
+        final State current;
+        synchronized (this) {
+            previous = state;
+            if (trial) {
+                if (state == State.HALF_OPEN) {
+                    trialsInFlight--;
+                    if (failed) {
+                        open();
+                    } else if (++trialsSucceeded >= trialCalls) {
+                        close();
+                    }
+                }
+            } else if (state == State.CLOSED) {
+                add(failed);
+                if (calls >= minimumCalls && failures * 100 >= failureRate * calls) {
+                    open();
+                }
+            }
+            current = state;
+        }
+        fireStateChange(previous, current);
+    }
+
+    /**
+     * Releases a call that went through the circuit but was not sent
+     *
+     * @param trial value returned by {@link #acquire()}
+     */
+    synchronized void cancel(boolean trial) {
+        if (trial && state == State.HALF_OPEN) {
+            trialsInFlight--;
+        }
+    }
+
+    private void add(boolean failed) {
+        if (calls == window.length) {
+            if (window[position]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        window[position] = failed;
+        if (failed) {
+            failures++;
+        }
+        position = (position + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = clock.getAsLong();
+        opened.incrementAndGet();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        position = 0;
+        calls = 0;
+        failures = 0;
+    }
+
+    private void fireStateChange(State previous, State current) {
+        if (previous != current && listener != null) {
+            listener.onStateChange(name, previous, current);
+        }
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    long rejected() {
+        return rejected.get();
+    }
+
+    long opened() {
+        return opened.get();
+    }
+
+    /**
+     * @return state and counters of the circuit
+     */
+    synchronized Json stats() {
+        return Json.map()
+                .set("state", state.name().toLowerCase())
+                .set("calls", calls)
+                .set("failures", failures)
+                .set("opened", opened.get())
+                .set("rejected", rejected.get());
+    }
+
+    /**
+     * Receives the changes of state of the circuit
+     */
+    interface Listener {
+        void onStateChange(String name, State previous, State current);
+    }
+}
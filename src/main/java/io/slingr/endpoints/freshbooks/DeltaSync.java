@@ -0,0 +1,127 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.services.datastores.DataStore;
+import io.slingr.endpoints.utils.Json;
+
+import java.time.Clock;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * <p>Incremental sync of the records changed since the last run
+ *
+ * <p>Each run uses the 'updated_from' filter with the watermark stored for the account and
+ * entity, and returns one page of records per call. When the last page is returned the time
+ * when the run started becomes the new watermark, so the records updated while the run was in
+ * progress are returned again on the next run instead of being lost.
+ *
+ * <p>The batch size is stored when a run starts and kept until it completes, the pages of a run
+ * would skip or repeat records if their size changed. The calls for the same account and entity
+ * are executed one at a time, so two concurrent calls do not fetch the same page.
+ */
+class DeltaSync {
+    static final String WATERMARK_FORMAT = "yyyy-MM-dd HH:mm:ss";
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern(WATERMARK_FORMAT);
+    private static final long OVERLAP_SECONDS = 60;
+
+    private final DataStore store;
+    private final String account;
+    private final ZoneId zone;
+    private final Clock clock;
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    /**
+     * @param store data store where the state of the syncs is persisted
+     * @param account name of the Freshbooks account
+     * @param zone time zone of the dates of the Freshbooks account
+     * @param clock source of the current time
+     */
+    DeltaSync(DataStore store, String account, ZoneId zone, Clock clock) {
+        this.store = store;
+        this.account = account;
+        this.zone = zone;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the next batch of changed records
+     *
+     * @param entity name of the entity (e.g. 'invoice')
+     * @param collection name of the list element on the response
+     * @param request options of the sync: 'batchSize' (max 100), only used when a run starts, and
+     *                'reset' to start from scratch
+     * @param pageFetcher function that executes the list request with the given filters
+     * @return batch with the records and the state of the sync
+     * @throws EndpointException exception if the request fails
+     */
+    Json next(String entity, String collection, Json request, Function<Json, Json> pageFetcher) throws EndpointException {
+        final String key = account + ":" + entity;
+        final int batchSize = Math.max(1, Math.min(ListPager.MAX_PER_PAGE,
+                ListPager.toInt(request != null ? request.string("batchSize") : null, ListPager.MAX_PER_PAGE)));
+        final boolean reset = request != null && "true".equalsIgnoreCase(request.string("reset"));
+        synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+            return next(key, entity, collection, batchSize, reset, pageFetcher);
+        }
+    }
+
+    private Json next(String key, String entity, String collection, int batchSize, boolean reset,
+                      Function<Json, Json> pageFetcher) throws EndpointException {
+        Json state = store.findOne(Json.map().set("key", key));
+        if (state == null) {
+            state = store.save(Json.map().set("key", key).set("account", account).set("entity", entity));
+        } else if (reset) {
+            state.set("watermark", null).set("runStartedAt", null).set("nextPage", null).set("perPage", null);
+        }
+
+        if (state.string("runStartedAt") == null) {
+            final ZonedDateTime runStart = ZonedDateTime.now(clock.withZone(zone)).minusSeconds(OVERLAP_SECONDS);
+            state.set("runStartedAt", FORMATTER.format(runStart)).set("nextPage", 1).set("perPage", batchSize);
+        }
+
+        final String watermark = state.string("watermark");
+        final int page = ListPager.toInt(state.string("nextPage"), 1);
+        final int perPage = ListPager.toInt(state.string("perPage"), batchSize);
+        final Json filters = Json.map()
+                .set("page", page)
+                .set("per_page", perPage)
+                .setIfNotNull("updated_from", watermark);
+
+        final Json response = pageFetcher.apply(filters);
+        final Json list = ListPager.listElement(response, collection);
+        if (list == null) {
+            throw EndpointException.permanent(ErrorCode.API, String.format("Unexpected response from FreshBooks [%s]", response));
+        }
+
+        final Json records = Json.list();
+        ListPager.addItems(records, list, entity);
+        final int pages = ListPager.toInt(list.string("@pages"), 1);
+        final boolean hasMore = page < pages;
+
+        if (hasMore) {
+            state.set("nextPage", page + 1);
+        } else {
+            state.set("watermark", state.string("runStartedAt"))
+                    .set("runStartedAt", null)
+                    .set("nextPage", null)
+                    .set("perPage", null);
+        }
+        store.update(state.string("_id"), state);
+
+        return Json.map()
+                .set("records", records)
+                .set("page", page)
+                .set("pages", pages)
+                .set("batchSize", perPage)
+                .set("total", ListPager.toInt(list.string("@total"), records.size()))
+                .set("hasMore", hasMore)
+                .set("updatedFrom", watermark)
+                .set("watermark", state.string("watermark"));
+    }
+}
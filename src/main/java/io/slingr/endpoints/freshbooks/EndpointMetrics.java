@@ -0,0 +1,288 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.utils.Json;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * <p>Counters and latencies of the calls to Freshbooks, per method
+ *
+ * <p>Only the time spent on the request to Freshbooks is measured, not the waits of the endpoint
+ * before sending it. Failures are split between API failures (responses with 'fail' status or
+ * with an HTTP error that cannot be repeated) and transport failures (timeouts, dropped
+ * connections, throttling and server errors). The calls rejected by the endpoint without sending
+ * them are counted apart. Other components can register gauges and counters
+ * that are exported together with the methods, optionally with labels that tell apart the values
+ * of the same metric (e.g. the account).
+ */
+class EndpointMetrics {
+    private static final String PREFIX = "freshbooks_";
+
+    private final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * Records a call that received a response
+     *
+     * @param method name of the freshbooks method
+     * @param nanos latency of the call
+     * @param apiFailure true if the response has the 'fail' status
+     */
+    void recordResponse(String method, long nanos, boolean apiFailure) {
+        final MethodMetrics metrics = method(method);
+        metrics.latency.record(nanos);
+        if (apiFailure) {
+            metrics.apiFailures.increment();
+        }
+    }
+
+    /**
+     * Records a call that failed with a transient error
+     *
+     * @param method name of the freshbooks method
+     * @param nanos latency of the call
+     */
+    void recordTransportFailure(String method, long nanos) {
+        final MethodMetrics metrics = method(method);
+        metrics.latency.record(nanos);
+        metrics.transportFailures.increment();
+    }
+
+    /**
+     * Records a call rejected by the endpoint without sending it, because the circuit was open
+     * or the bulkhead was full
+     *
+     * @param method name of the freshbooks method
+     */
+    void recordRejection(String method) {
+        method(method).rejections.increment();
+    }
+
+    private MethodMetrics method(String method) {
+        MethodMetrics metrics = methods.get(method);
+        if (metrics == null) {
+            metrics = methods.computeIfAbsent(method, m -> new MethodMetrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the latency histogram of a method
+     *
+     * @param method name of the freshbooks method
+     * @return histogram of the method, it is created if it does not exist
+     */
+    LatencyHistogram latency(String method) {
+        return method(method).latency;
+    }
+
+    /**
+     * Registers a value that is read when the metrics are exported
+     *
+     * @param name name of the metric, without prefix
+     * @param help description of the metric
+     * @param value supplier of the current value
+     */
+    void gauge(String name, String help, Supplier<Number> value) {
+        gauge(name, null, help, value);
+    }
+
+    /**
+     * Registers a value with labels, each set of labels of the metric is a different value
+     *
+     * @param name name of the metric, without prefix
+     * @param labels labels built with {@link #labels(String...)}, can be null
+     * @param help description of the metric
+     * @param value supplier of the current value
+     */
+    void gauge(String name, String labels, String help, Supplier<Number> value) {
+        register(new Gauge(name, labels, "gauge", help, value));
+    }
+
+    /**
+     * Registers a value that only grows, it is exported with the counter type so the rates can
+     * be computed from it
+     *
+     * @param name name of the metric, without prefix, it should end with '_total'
+     * @param help description of the metric
+     * @param value supplier of the current value
+     */
+    void counter(String name, String help, Supplier<Number> value) {
+        counter(name, null, help, value);
+    }
+
+    /**
+     * Registers a value that only grows with labels, each set of labels of the metric is a
+     * different value
+     *
+     * @param name name of the metric, without prefix, it should end with '_total'
+     * @param labels labels built with {@link #labels(String...)}, can be null
+     * @param help description of the metric
+     * @param value supplier of the current value
+     */
+    void counter(String name, String labels, String help, Supplier<Number> value) {
+        register(new Gauge(name, labels, "counter", help, value));
+    }
+
+    private void register(Gauge gauge) {
+        gauges.put(gauge.labels != null ? gauge.name + "{" + gauge.labels + "}" : gauge.name, gauge);
+    }
+
+    /**
+     * @param pairs names and values of the labels, alternated
+     * @return labels in the exposition format, e.g. 'account="acme",group="client"'
+     */
+    static String labels(String... pairs) {
+        final StringBuilder labels = new StringBuilder();
+        for (int i = 0; i + 1 < pairs.length; i += 2) {
+            if (labels.length() > 0) {
+                labels.append(',');
+            }
+            labels.append(pairs[i]).append("=\"").append(escape(pairs[i + 1])).append('"');
+        }
+        return labels.toString();
+    }
+
+    /**
+     * @return metrics of each method
+     */
+    Json toJson() {
+        final Json json = Json.map();
+        for (Map.Entry<String, MethodMetrics> entry : new TreeMap<>(methods).entrySet()) {
+            final MethodMetrics metrics = entry.getValue();
+            json.set(entry.getKey(), Json.map()
+                    .set("requests", metrics.latency.count())
+                    .set("apiFailures", metrics.apiFailures.sum())
+                    .set("transportFailures", metrics.transportFailures.sum())
+                    .set("rejections", metrics.rejections.sum())
+                    .set("p50", metrics.latency.percentile(0.5))
+                    .set("p95", metrics.latency.percentile(0.95))
+                    .set("p99", metrics.latency.percentile(0.99)));
+        }
+        final Json values = Json.map();
+        for (Map.Entry<String, Gauge> entry : new TreeMap<>(gauges).entrySet()) {
+            values.set(entry.getKey(), entry.getValue().value.get());
+        }
+        return Json.map().set("methods", json).set("gauges", values);
+    }
+
+    /**
+     * @return metrics in the Prometheus text exposition format
+     */
+    String toPrometheus() {
+        final StringBuilder text = new StringBuilder(4096);
+        final Map<String, MethodMetrics> sorted = new TreeMap<>(methods);
+
+        header(text, "requests_total", "counter", "Calls to FreshBooks");
+        for (Map.Entry<String, MethodMetrics> entry : sorted.entrySet()) {
+            sample(text, "requests_total", label(entry.getKey()), entry.getValue().latency.count());
+        }
+
+        header(text, "failures_total", "counter", "Failed calls to FreshBooks by type: 'api' for responses with fail status or a permanent HTTP error, 'transport' for transient errors");
+        for (Map.Entry<String, MethodMetrics> entry : sorted.entrySet()) {
+            sample(text, "failures_total", label(entry.getKey()) + ",type=\"api\"", entry.getValue().apiFailures.sum());
+            sample(text, "failures_total", label(entry.getKey()) + ",type=\"transport\"", entry.getValue().transportFailures.sum());
+        }
+
+        header(text, "rejections_total", "counter", "Calls rejected by the endpoint without sending them to FreshBooks");
+        for (Map.Entry<String, MethodMetrics> entry : sorted.entrySet()) {
+            sample(text, "rejections_total", label(entry.getKey()), entry.getValue().rejections.sum());
+        }
+
+        header(text, "request_duration_seconds", "histogram", "Latency of the calls to FreshBooks");
+        for (Map.Entry<String, MethodMetrics> entry : sorted.entrySet()) {
+            final LatencyHistogram latency = entry.getValue().latency;
+            final long[] counts = latency.bucketCounts();
+            long cumulative = 0;
+            for (int i = 0; i < LatencyHistogram.BUCKETS.length; i++) {
+                cumulative += counts[i];
+                sample(text, "request_duration_seconds_bucket", label(entry.getKey()) + ",le=\"" + format(LatencyHistogram.BUCKETS[i] / 1000d) + "\"", cumulative);
+            }
+            cumulative += counts[LatencyHistogram.BUCKETS.length];
+            sample(text, "request_duration_seconds_bucket", label(entry.getKey()) + ",le=\"+Inf\"", cumulative);
+            sample(text, "request_duration_seconds_sum", label(entry.getKey()), latency.sumSeconds());
+            sample(text, "request_duration_seconds_count", label(entry.getKey()), cumulative);
+        }
+
+        header(text, "request_latency_seconds", "gauge", "Estimated percentiles of the latency of the calls to FreshBooks");
+        for (Map.Entry<String, MethodMetrics> entry : sorted.entrySet()) {
+            final LatencyHistogram latency = entry.getValue().latency;
+            for (double quantile : new double[]{0.5, 0.95, 0.99}) {
+                sample(text, "request_latency_seconds", label(entry.getKey()) + ",quantile=\"" + format(quantile) + "\"", latency.percentile(quantile) / 1000d);
+            }
+        }
+
+        // the samples of a metric go together under one header
+        final Map<String, List<Gauge>> byName = new TreeMap<>();
+        for (Gauge gauge : new TreeMap<>(gauges).values()) {
+            byName.computeIfAbsent(gauge.name, name -> new ArrayList<>()).add(gauge);
+        }
+        for (List<Gauge> samples : byName.values()) {
+            final Gauge first = samples.get(0);
+            header(text, first.name, first.type, first.help);
+            for (Gauge gauge : samples) {
+                sample(text, gauge.name, gauge.labels, gauge.value.get());
+            }
+        }
+        return text.toString();
+    }
+
+    private static String label(String method) {
+        return "method=\"" + escape(method) + "\"";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static void header(StringBuilder text, String name, String type, String help) {
+        text.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder text, String name, String labels, Number value) {
+        text.append(PREFIX).append(name);
+        if (labels != null) {
+            text.append('{').append(labels).append('}');
+        }
+        text.append(' ').append(value instanceof Double || value instanceof Float ? format(value.doubleValue()) : String.valueOf(value)).append('\n');
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            return String.valueOf((long) value);
+        }
+        return String.format(Locale.ROOT, "%s", value);
+    }
+
+    private static class MethodMetrics {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder apiFailures = new LongAdder();
+        private final LongAdder transportFailures = new LongAdder();
+        private final LongAdder rejections = new LongAdder();
+    }
+
+    private static class Gauge {
+        private final String name;
+        private final String labels;
+        private final String type;
+        private final String help;
+        private final Supplier<Number> value;
+
+        private Gauge(String name, String labels, String type, String help, Supplier<Number> value) {
+            this.name = name;
+            this.labels = labels;
+            this.type = type;
+            this.help = help;
+            this.value = value;
+        }
+    }
+}
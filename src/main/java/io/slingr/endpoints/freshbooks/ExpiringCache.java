@@ -0,0 +1,230 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.utils.Json;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * <p>In-memory read-through cache where the entries expire after a fixed time
+ *
+ * <p>When a maximum size is set the least recently used entries are evicted first. A load that
+ * was in flight when its key was invalidated or replaced does not store its value, so the stale
+ * value it read is not cached after the invalidation.
+ *
+ * <p>Mutable values are copied with the given copier when they are stored and when they are
+ * returned, so a caller that modifies a value does not modify the cached one.
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the cached values
+ */
+class ExpiringCache<K, V> {
+
+    private final String name;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final LongSupplier clock;
+    private final UnaryOperator<V> copier;
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // loads in flight, guarded by entries. Invalidating a key removes its load so it is not stored.
+    private final Map<K, Object> loads = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    ExpiringCache(String name, long ttlMillis) {
+        this(name, ttlMillis, 0, System::currentTimeMillis);
+    }
+
+    ExpiringCache(String name, long ttlMillis, int maxEntries) {
+        this(name, ttlMillis, maxEntries, System::currentTimeMillis);
+    }
+
+    ExpiringCache(String name, long ttlMillis, LongSupplier clock) {
+        this(name, ttlMillis, 0, clock);
+    }
+
+    /**
+     * @param name name of the cache, used on the stats
+     * @param ttlMillis time to live of the entries, zero disables the cache
+     * @param maxEntries maximum number of entries, zero means no limit
+     * @param clock source of the current time
+     */
+    ExpiringCache(String name, long ttlMillis, int maxEntries, LongSupplier clock) {
+        this(name, ttlMillis, maxEntries, clock, UnaryOperator.identity());
+    }
+
+    /**
+     * @param name name of the cache, used on the stats
+     * @param ttlMillis time to live of the entries, zero disables the cache
+     * @param maxEntries maximum number of entries, zero means no limit
+     * @param clock source of the current time
+     * @param copier copies the values that are stored and returned
+     */
+    ExpiringCache(String name, long ttlMillis, int maxEntries, LongSupplier clock, UnaryOperator<V> copier) {
+        this.name = name;
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = Math.max(0, maxEntries);
+        this.clock = clock;
+        this.copier = copier;
+    }
+
+    /**
+     * @return true if the values are cached, a ttl of zero disables the cache
+     */
+    boolean isEnabled() {
+        return ttlMillis > 0;
+    }
+
+    /**
+     * Returns the cached value or loads it when it is missing or expired. The loader is not
+     * invoked while holding locks, so concurrent misses can load the value more than once.
+     *
+     * @param key key of the value
+     * @param loader function used to load the value on a miss
+     * @return value associated to the key
+     */
+    V get(K key, Function<K, V> loader) {
+        if (!isEnabled()) {
+            return loader.apply(key);
+        }
+
+        final long now = clock.getAsLong();
+        final Object load = new Object();
+        synchronized (entries) {
+            final Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expiresAt > now) {
+                    hits.incrementAndGet();
+                    return copier.apply(entry.value);
+                }
+                entries.remove(key);
+                expirations.incrementAndGet();
+            }
+            loads.put(key, load);
+        }
+
+        misses.incrementAndGet();
+        V value = null;
+        try {
+            value = loader.apply(key);
+        } finally {
+            synchronized (entries) {
+                // skipped when the key was invalidated, or loaded again, while loading
+                if (loads.remove(key, load) && value != null) {
+                    store(key, copier.apply(value), now);
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Stores the value, replacing the previous one
+     */
+    void put(K key, V value) {
+        if (isEnabled() && value != null) {
+            final V copy = copier.apply(value);
+            synchronized (entries) {
+                loads.remove(key);
+                store(key, copy, clock.getAsLong());
+            }
+        }
+    }
+
+    // must be called holding the lock of the entries
+    private void store(K key, V value, long now) {
+        entries.put(key, new Entry<>(value, now + ttlMillis));
+        if (maxEntries > 0 && entries.size() > maxEntries) {
+            final Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && eldest.hasNext()) {
+                final Map.Entry<K, Entry<V>> entry = eldest.next();
+                eldest.remove();
+                if (entry.getValue().expiresAt > now) {
+                    evictions.incrementAndGet();
+                } else {
+                    expirations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the value associated to the key
+     */
+    void invalidate(K key) {
+        synchronized (entries) {
+            entries.remove(key);
+            loads.remove(key);
+        }
+    }
+
+    /**
+     * Removes all the values
+     */
+    void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+            loads.clear();
+        }
+    }
+
+    /**
+     * @return number of entries, including the expired ones that were not removed yet
+     */
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    long hits() {
+        return hits.get();
+    }
+
+    long misses() {
+        return misses.get();
+    }
+
+    long evictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return counters of the cache
+     */
+    Json stats() {
+        final long hitCount = hits.get();
+        final long missCount = misses.get();
+        final long requests = hitCount + missCount;
+        return Json.map()
+                .set("name", name)
+                .set("enabled", isEnabled())
+                .set("ttl", ttlMillis)
+                .set("maxSize", maxEntries)
+                .set("size", size())
+                .set("hits", hitCount)
+                .set("misses", missCount)
+                .set("evictions", evictions.get())
+                .set("expirations", expirations.get())
+                .set("hitRate", requests > 0 ? (double) hitCount / requests : 0d);
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.conn.ConnectTimeoutException;
+
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+
+/**
+ * <p>Classification of the failures in transient and permanent
+ *
+ * <p>Transient failures are timeouts, dropped connections, throttling and server errors, where
+ * the same request can succeed a moment later. The rest of the failures, including the errors
+ * reported by Freshbooks in the response, are permanent.
+ */
+class Failures {
+    private static final String REJECTED = "rejectedByEndpoint";
+    private static final String REJECTED_BY = "rejectedBy";
+
+    private Failures() {
+    }
+
+    /**
+     * @param status HTTP status code
+     * @return true if a request that failed with the status can succeed if it is repeated
+     */
+    static boolean isTransientStatus(int status) {
+        return status == 408 || status == 429 || status >= 500;
+    }
+
+    /**
+     * @param exception exception thrown by the transport
+     * @return true if the exception is caused by a network failure that can be temporary
+     */
+    static boolean isTransient(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            // timeouts are InterruptedIOException, refused and reset connections are SocketException
+            if (cause instanceof InterruptedIOException
+                    || cause instanceof SocketException
+                    || cause instanceof NoHttpResponseException
+                    || cause instanceof UnknownHostException) {
+                return true;
+            }
+            if (cause == cause.getCause()) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param exception exception thrown by a request
+     * @return true if the request can be repeated
+     */
+    static boolean isTransient(EndpointException exception) {
+        return exception.isRetryable() || isTransientStatus(exception.getReturnCode()) || isTransient(exception.getCause());
+    }
+
+    /**
+     * Builds the exception of a call rejected by the endpoint before sending it, because the
+     * circuit is open or there are too many calls in flight. The app can repeat the call later,
+     * but it is not retried by the endpoint.
+     *
+     * @param component component that rejected the call (e.g. 'circuit' or 'bulkhead')
+     * @param message message of the exception
+     * @param returnCode HTTP code of the rejection
+     * @return retryable exception
+     */
+    static EndpointException rejected(String component, String message, int returnCode) {
+        return EndpointException.retryable(ErrorCode.API, message, Json.map().set(REJECTED, true).set(REJECTED_BY, component))
+                .returnCode(returnCode);
+    }
+
+    /**
+     * @param exception exception thrown by a request
+     * @return true if the request was rejected by the endpoint without sending it
+     */
+    static boolean isRejected(EndpointException exception) {
+        final Json info = exception.getAdditionalInfo();
+        return info != null && Boolean.TRUE.equals(info.bool(REJECTED));
+    }
+
+    /**
+     * @param exception exception thrown by a request
+     * @param component component that may have rejected it
+     * @return true if the request was rejected by the given component without sending it
+     */
+    static boolean isRejectedBy(EndpointException exception, String component) {
+        final Json info = exception.getAdditionalInfo();
+        return isRejected(exception) && component.equals(info.string(REJECTED_BY));
+    }
+
+    /**
+     * Converts a transport exception in a retryable exception when it is transient
+     *
+     * @param exception exception thrown by the transport
+     * @return retryable exception, or null if the exception is not transient
+     */
+    static EndpointException toTransient(Exception exception) {
+        if (!isTransient(exception)) {
+            return null;
+        }
+        final ErrorCode code = exception instanceof SocketTimeoutException || exception instanceof ConnectTimeoutException
+                ? ErrorCode.TIMEOUT : ErrorCode.CLIENT;
+        return EndpointException.retryable(code, String.format("Transient error calling FreshBooks [%s]", exception), exception);
+    }
+}
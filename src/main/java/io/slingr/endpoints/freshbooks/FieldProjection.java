@@ -0,0 +1,174 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>Subset of the fields of a response selected by the app
+ *
+ * <p>The paths are relative to the 'response' element and the segments are separated by dots,
+ * for example 'invoices.invoice.*.invoice_id'. The '*' segments stand for the elements of a
+ * list and can be omitted, because the repeated elements are read as lists. A path selects the
+ * whole subtree of its last element. The attributes of the elements on the way (status and
+ * pagination) are always kept.
+ */
+class FieldProjection {
+    private static final String WILDCARD = "*";
+    private static final FieldProjection ALL = new FieldProjection(true);
+
+    private final boolean all;
+    private final Map<String, FieldProjection> children = new TreeMap<>();
+
+    private FieldProjection(boolean all) {
+        this.all = all;
+    }
+
+    /**
+     * Parses the 'fields' option
+     *
+     * @param value list of paths or a string with paths separated by commas, can be null
+     * @return projection, or null when no paths are given
+     * @throws EndpointException exception if the value is not a list nor a string
+     */
+    static FieldProjection parse(Object value) throws EndpointException {
+        if (value == null) {
+            return null;
+        }
+        final List<String> paths = new ArrayList<>();
+        if (value instanceof Json && ((Json) value).isList()) {
+            value = ((Json) value).toList();
+        }
+        if (value instanceof List) {
+            for (Object path : (List<?>) value) {
+                if (path != null) {
+                    paths.add(path.toString());
+                }
+            }
+        } else if (value instanceof String) {
+            Collections.addAll(paths, ((String) value).split(","));
+        } else {
+            throw EndpointException.permanent(ErrorCode.ARGUMENT, String.format("Invalid fields [%s], a list of paths is expected", value));
+        }
+
+        final FieldProjection root = new FieldProjection(false);
+        for (String path : paths) {
+            root.add(path.trim());
+        }
+        return root.children.isEmpty() ? null : root;
+    }
+
+    private void add(String path) {
+        FieldProjection node = this;
+        final List<String> segments = new ArrayList<>();
+        for (String segment : path.split("\\.")) {
+            if (!segment.isEmpty() && !WILDCARD.equals(segment)) {
+                segments.add(segment);
+            }
+        }
+        if (!segments.isEmpty() && "response".equals(segments.get(0))) {
+            segments.remove(0);
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            if (node.all) {
+                return;
+            }
+            final boolean last = i == segments.size() - 1;
+            final String segment = segments.get(i);
+            final FieldProjection child = node.children.get(segment);
+            if (last) {
+                node.children.put(segment, ALL);
+            } else if (child == null) {
+                final FieldProjection created = new FieldProjection(false);
+                node.children.put(segment, created);
+                node = created;
+            } else {
+                node = child;
+            }
+        }
+    }
+
+    /**
+     * @return true if the whole subtree is selected
+     */
+    boolean isAll() {
+        return all;
+    }
+
+    /**
+     * @param name name of a child element
+     * @return projection of the child, or null if the child is not selected
+     */
+    FieldProjection child(String name) {
+        return all ? ALL : children.get(name);
+    }
+
+    /**
+     * Applies the projection to a response that was already parsed. The failed responses are
+     * returned as they are, so the error is not lost.
+     *
+     * @param response response as '{"response": {...}}'
+     * @return copy of the response with the selected fields
+     */
+    Json apply(Json response) {
+        if (response == null || !response.contains("response")
+                || "fail".equalsIgnoreCase(response.json("response").string("@status"))) {
+            return response;
+        }
+        return Json.map().merge(response).set("response", project(response.json("response")));
+    }
+
+    private Object project(Object value) {
+        if (all || value == null) {
+            return value;
+        }
+        if (value instanceof Json && ((Json) value).isList()) {
+            value = ((Json) value).toList();
+        }
+        if (value instanceof List) {
+            final Json list = Json.list();
+            for (Object element : (List<?>) value) {
+                list.push(project(element));
+            }
+            return list;
+        }
+        if (!(value instanceof Json) && !(value instanceof Map)) {
+            // text element, there is nothing to select inside
+            return value;
+        }
+        final Json json = Json.fromObject(value);
+        final Json result = Json.map();
+        for (String key : json.keys()) {
+            if (key.startsWith("@")) {
+                result.set(key, json.object(key));
+            } else {
+                final FieldProjection child = child(key);
+                if (child != null) {
+                    result.set(key, child.project(json.object(key)));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return canonical text of the paths, the same selection always generates the same text
+     */
+    @Override
+    public String toString() {
+        if (all) {
+            return WILDCARD;
+        }
+        final StringBuilder text = new StringBuilder("{");
+        for (Map.Entry<String, FieldProjection> child : children.entrySet()) {
+            text.append(child.getKey()).append(':').append(child.getValue()).append(',');
+        }
+        return text.append('}').toString();
+    }
+}
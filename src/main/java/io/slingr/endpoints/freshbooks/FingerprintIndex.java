@@ -0,0 +1,125 @@
+package io.slingr.endpoints.freshbooks;
+
+/**
+ * <p>Compact map from numeric ids to the fingerprints of the records
+ *
+ * <p>Uses open addressing over primitive arrays, so each entry takes around 17 bytes instead of
+ * the boxed keys, values and nodes of a HashMap. It is not thread safe.
+ */
+class FingerprintIndex {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] ids;
+    private long[] fingerprints;
+    private boolean[] used;
+    private int size;
+
+    FingerprintIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize number of entries expected, used to size the arrays
+     */
+    FingerprintIndex(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        ids = new long[capacity];
+        fingerprints = new long[capacity];
+        used = new boolean[capacity];
+        size = 0;
+    }
+
+    /**
+     * Stores the fingerprint of the id, replacing the previous one
+     */
+    void put(long id, long fingerprint) {
+        if ((size + 1) * 2 > ids.length) {
+            grow();
+        }
+        int slot = slot(id);
+        while (used[slot] && ids[slot] != id) {
+            slot = (slot + 1) & (ids.length - 1);
+        }
+        if (!used[slot]) {
+            used[slot] = true;
+            ids[slot] = id;
+            size++;
+        }
+        fingerprints[slot] = fingerprint;
+    }
+
+    boolean contains(long id) {
+        return find(id) >= 0;
+    }
+
+    /**
+     * @return fingerprint of the id, or the default value if the id is not indexed
+     */
+    long get(long id, long defaultValue) {
+        final int slot = find(id);
+        return slot >= 0 ? fingerprints[slot] : defaultValue;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Iterates over all the entries, in no particular order
+     */
+    void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < ids.length; i++) {
+            if (used[i]) {
+                consumer.accept(ids[i], fingerprints[i]);
+            }
+        }
+    }
+
+    private int find(long id) {
+        int slot = slot(id);
+        while (used[slot]) {
+            if (ids[slot] == id) {
+                return slot;
+            }
+            slot = (slot + 1) & (ids.length - 1);
+        }
+        return -1;
+    }
+
+    private int slot(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+        return (int) hash & (ids.length - 1);
+    }
+
+    private void grow() {
+        final long[] oldIds = ids;
+        final long[] oldFingerprints = fingerprints;
+        final boolean[] oldUsed = used;
+        allocate(oldIds.length * 2);
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldUsed[i]) {
+                put(oldIds[i], oldFingerprints[i]);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FingerprintIndex{size=%s, capacity=%s}", size, ids.length);
+    }
+
+    /**
+     * Receives the entries of the index
+     */
+    interface EntryConsumer {
+        void accept(long id, long fingerprint);
+    }
+}
@@ -0,0 +1,435 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.services.IHttpExceptionConverter;
+import io.slingr.endpoints.utils.Json;
+import io.slingr.endpoints.utils.converters.ContentTypeFormat;
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.Header;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.DeflateInputStream;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.UnsupportedSchemeException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.http.util.EntityUtils;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <p>HTTP client that sends the requests to Freshbooks and parses the responses while they are
+ * being received
+ *
+ * <p>The connections to the Freshbooks host are pooled and kept alive, so consecutive requests
+ * reuse the connection instead of doing a new TLS handshake. All the connections share the same
+ * SSL context, which keeps the TLS sessions to resume them when a new connection is opened.
+ *
+ * <p>The responses are requested with gzip or deflate encoding, the XML of the lists is reduced
+ * several times. The content is decompressed while it is parsed, so the whole response is never
+ * held in memory.
+ */
+class FreshbooksClient implements Closeable {
+    private static final int MAX_ERROR_BODY = 1024;
+    private static final int BUFFER_SIZE = 8192;
+    private static final String ACCEPTED_ENCODINGS = "gzip, deflate";
+
+    private final String url;
+    private final String authorization;
+    private final IHttpExceptionConverter exceptionConverter;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final boolean compression;
+    private final int connectTimeout;
+    private final long keepAlive;
+
+    private final AtomicLong compressedResponses = new AtomicLong();
+    private final AtomicLong wireBytes = new AtomicLong();
+    private final AtomicLong contentBytes = new AtomicLong();
+
+    /**
+     * @param url url of the Freshbooks API of the account
+     * @param token authentication token of the account
+     * @param userAgent user agent sent on the requests
+     * @param settings settings of the connection pool
+     * @param exceptionConverter converter of the transport exceptions
+     */
+    FreshbooksClient(String url, String token, String userAgent, Settings settings, IHttpExceptionConverter exceptionConverter) {
+        this.url = url;
+        this.authorization = "Basic " + Base64.getEncoder().encodeToString((token + ":x").getBytes(StandardCharsets.UTF_8));
+        this.exceptionConverter = exceptionConverter;
+        this.compression = settings.compression;
+        this.connectTimeout = settings.connectTimeout;
+        this.keepAlive = settings.keepAlive;
+
+        this.connectionManager = new PoolingHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", new SSLConnectionSocketFactory(SSLContexts.createDefault()))
+                .build());
+        // all the requests go to the same host
+        this.connectionManager.setMaxTotal(settings.maxConnections);
+        this.connectionManager.setDefaultMaxPerRoute(settings.maxConnections);
+        this.connectionManager.setValidateAfterInactivity(settings.validateAfterInactivity);
+
+        this.httpClient = HttpClients.custom()
+                .setUserAgent(userAgent)
+                .setConnectionManager(connectionManager)
+                // the encoding is negotiated here, so the decompression is streamed and the wire bytes are counted
+                .disableContentCompression()
+                .setKeepAliveStrategy(keepAliveStrategy(settings.keepAlive))
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(settings.connectTimeout)
+                        .setConnectionRequestTimeout(settings.connectTimeout)
+                        .setSocketTimeout(settings.socketTimeout)
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(settings.idleTimeout, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Uses the timeout sent by the server in the 'Keep-Alive' header, or the default one
+     */
+    private static ConnectionKeepAliveStrategy keepAliveStrategy(long defaultKeepAlive) {
+        return (HttpResponse response, HttpContext context) -> {
+            final HeaderElementIterator elements = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+            while (elements.hasNext()) {
+                final HeaderElement element = elements.nextElement();
+                if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+                    try {
+                        return Long.parseLong(element.getValue()) * 1000;
+                    } catch (NumberFormatException e) {
+                        // use the default one
+                    }
+                }
+            }
+            return defaultKeepAlive;
+        };
+    }
+
+    /**
+     * Sends the request and parses the complete response
+     *
+     * @param envelope envelope of the freshbooks method
+     * @param body body of the request, can be null
+     * @param projection fields of the response to keep, null keeps all of them
+     * @param onBytes callback that receives the size of the response body on the wire, can be null
+     * @param onAbort callback that receives the action that aborts the request, can be null
+     * @return response from freshbooks
+     * @throws EndpointException exception if the request fails
+     */
+    Json post(XmlRequestWriter.Envelope envelope, Json body, FieldProjection projection, LongConsumer onBytes,
+              Consumer<Runnable> onAbort) throws EndpointException {
+        return postList(envelope, body, null, null, null, projection, onBytes, onAbort);
+    }
+
+    /**
+     * Sends the request and parses the response, the items of the list element are handed to
+     * the callback one by one
+     *
+     * @param envelope envelope of the freshbooks method
+     * @param body body of the request, can be null
+     * @param collection name of the list element (e.g. 'invoices')
+     * @param item name of the item elements (e.g. 'invoice')
+     * @param onItem callback for the items, when it is null the items are kept in the response
+     * @param projection fields of the response to keep, null keeps all of them
+     * @param onBytes callback that receives the size of the response body on the wire, can be null
+     * @param onAbort callback that receives the action that aborts the request, can be null
+     * @return response from freshbooks
+     * @throws EndpointException exception if the request fails
+     */
+    Json postList(XmlRequestWriter.Envelope envelope, Json body, String collection, String item, Consumer<Json> onItem,
+                  FieldProjection projection, LongConsumer onBytes, Consumer<Runnable> onAbort) throws EndpointException {
+        final HttpPost post = new HttpPost(url);
+        post.setHeader(HttpHeaders.AUTHORIZATION, authorization);
+        if (compression) {
+            post.setHeader(HttpHeaders.ACCEPT_ENCODING, ACCEPTED_ENCODINGS);
+        }
+        try {
+            post.setEntity(new ByteArrayEntity(XmlRequestWriter.write(envelope, body),
+                    ContentType.create(ContentTypeFormat.XML.getMimeType(), StandardCharsets.UTF_8)));
+        } catch (XMLStreamException e) {
+            throw EndpointException.permanent(ErrorCode.ARGUMENT, String.format("Invalid request [%s]", e.getMessage()), e);
+        }
+
+        if (onAbort != null) {
+            onAbort.accept(post::abort);
+        }
+        try (CloseableHttpResponse response = httpClient.execute(post)) {
+            final int status = response.getStatusLine().getStatusCode();
+            final HttpEntity entity = response.getEntity();
+            if (status >= 300) {
+                final String error = errorBody(entity);
+                final String message = String.format("FreshBooks HTTP error [%s] [%s]", status,
+                        error.length() > MAX_ERROR_BODY ? error.substring(0, MAX_ERROR_BODY) : error);
+                throw (Failures.isTransientStatus(status)
+                        ? EndpointException.retryable(ErrorCode.API, message)
+                        : EndpointException.permanent(ErrorCode.API, message)).returnCode(status);
+            }
+            if (entity == null) {
+                throw EndpointException.permanent(ErrorCode.API, "Empty response from FreshBooks").returnCode(status);
+            }
+            try (CountingInputStream wire = new CountingInputStream(entity.getContent());
+                 CountingInputStream content = new CountingInputStream(decode(wire, entity.getContentEncoding()))) {
+                final Json json = XmlResponseReader.read(content, collection, item, onItem, projection);
+                wireBytes.addAndGet(wire.count());
+                contentBytes.addAndGet(content.count());
+                if (onBytes != null) {
+                    onBytes.accept(wire.count());
+                }
+                return json;
+            }
+        } catch (XMLStreamException e) {
+            throw EndpointException.permanent(ErrorCode.API, String.format("Invalid response from FreshBooks [%s]", e.getMessage()), e);
+        } catch (IOException e) {
+            throw exceptionConverter.convertToEndpointException(e);
+        }
+    }
+
+    /**
+     * Wraps the content of the response with the decoder of its encoding
+     *
+     * @param in content as it is received
+     * @param encoding 'Content-Encoding' header, can be null
+     * @return decoded content
+     * @throws IOException exception if the encoding is not supported or the content is corrupted
+     */
+    private InputStream decode(InputStream in, Header encoding) throws IOException {
+        final String name = encoding != null && encoding.getValue() != null
+                ? encoding.getValue().trim().toLowerCase(Locale.ENGLISH) : "";
+        switch (name) {
+            case "":
+            case "identity":
+                return in;
+            case "gzip":
+            case "x-gzip":
+                compressedResponses.incrementAndGet();
+                return new GZIPInputStream(in, BUFFER_SIZE);
+            case "deflate":
+                // handles both the zlib and the raw streams sent by the servers
+                compressedResponses.incrementAndGet();
+                return new DeflateInputStream(in);
+            default:
+                throw new IOException(String.format("Unsupported content encoding [%s]", name));
+        }
+    }
+
+    private String errorBody(HttpEntity entity) throws IOException {
+        if (entity == null) {
+            return "";
+        }
+        try (InputStream content = decode(entity.getContent(), entity.getContentEncoding())) {
+            return EntityUtils.toString(new InputStreamEntity(content), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * @return responses received compressed
+     */
+    long compressedResponses() {
+        return compressedResponses.get();
+    }
+
+    /**
+     * @return bytes of the response bodies as they were received
+     */
+    long wireBytes() {
+        return wireBytes.get();
+    }
+
+    /**
+     * @return bytes of the response bodies once they were decompressed
+     */
+    long contentBytes() {
+        return contentBytes.get();
+    }
+
+    /**
+     * Opens connections to Freshbooks and leaves them idle in the pool, so the first requests do
+     * not pay for the DNS lookup and the TLS handshake. The connections that are already open
+     * are counted and not opened again.
+     *
+     * @param count number of connections wanted in the pool
+     * @return number of open connections in the pool for Freshbooks
+     * @throws EndpointException exception if a connection cannot be opened
+     */
+    int preconnect(int count) throws EndpointException {
+        final URI uri = URI.create(url);
+        final HttpHost host = new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme());
+        final HttpRoute route;
+        try {
+            // the same route the client plans for the requests, with the default port resolved
+            route = new HttpRoute(new HttpHost(host.getHostName(), DefaultSchemePortResolver.INSTANCE.resolve(host), host.getSchemeName()),
+                    null, "https".equalsIgnoreCase(host.getSchemeName()));
+        } catch (UnsupportedSchemeException e) {
+            throw EndpointException.permanent(ErrorCode.CLIENT, String.format("Invalid FreshBooks url [%s]", url), e);
+        }
+
+        final List<HttpClientConnection> connections = new ArrayList<>();
+        try {
+            for (int i = 0; i < Math.min(count, connectionManager.getMaxTotal()); i++) {
+                final HttpClientConnection connection = connectionManager.requestConnection(route, null)
+                        .get(connectTimeout, TimeUnit.MILLISECONDS);
+                connections.add(connection);
+                if (!connection.isOpen()) {
+                    final HttpClientContext context = HttpClientContext.create();
+                    connectionManager.connect(connection, route, connectTimeout, context);
+                    connectionManager.routeComplete(connection, route, context);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw EndpointException.permanent(ErrorCode.GENERAL, "Interrupted while opening connections", e);
+        } catch (ExecutionException e) {
+            throw exceptionConverter.convertToEndpointException(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+        } catch (IOException e) {
+            throw exceptionConverter.convertToEndpointException(e);
+        } finally {
+            for (HttpClientConnection connection : connections) {
+                connectionManager.releaseConnection(connection, null, keepAlive, TimeUnit.MILLISECONDS);
+            }
+        }
+        return connections.size();
+    }
+
+    /**
+     * @return connections leased, pending and available in the pool
+     */
+    PoolStats poolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    /**
+     * Settings of the connection pool, the times are in milliseconds
+     */
+    static class Settings {
+        static final int DEFAULT_MAX_CONNECTIONS = 20;
+        static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+        static final int DEFAULT_SOCKET_TIMEOUT = 60000;
+        static final int DEFAULT_IDLE_TIMEOUT = 30000;
+        static final int DEFAULT_KEEP_ALIVE = 60000;
+
+        private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+        private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+        private int socketTimeout = DEFAULT_SOCKET_TIMEOUT;
+        private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+        private long keepAlive = DEFAULT_KEEP_ALIVE;
+        private int validateAfterInactivity = 2000;
+        private boolean compression = true;
+
+        Settings maxConnections(int maxConnections) {
+            this.maxConnections = Math.max(1, maxConnections);
+            return this;
+        }
+
+        Settings connectTimeout(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        Settings socketTimeout(int socketTimeout) {
+            this.socketTimeout = socketTimeout;
+            return this;
+        }
+
+        Settings idleTimeout(long idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        Settings keepAlive(long keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        Settings compression(boolean compression) {
+            this.compression = compression;
+            return this;
+        }
+    }
+
+    /**
+     * Counts the bytes read from the response
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int value = super.read();
+            if (value >= 0) {
+                count++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            final int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        private long count() {
+            return count;
+        }
+    }
+}
@@ -3,13 +3,16 @@ package io.slingr.endpoints.freshbooks;
 import io.slingr.endpoints.HttpEndpoint;
 import io.slingr.endpoints.exceptions.EndpointException;
 import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.framework.annotations.EndpointDataStore;
 import io.slingr.endpoints.framework.annotations.EndpointFunction;
 import io.slingr.endpoints.framework.annotations.EndpointProperty;
 import io.slingr.endpoints.framework.annotations.EndpointWebService;
 import io.slingr.endpoints.framework.annotations.SlingrEndpoint;
 import io.slingr.endpoints.services.HttpService;
 import io.slingr.endpoints.services.IHttpExceptionConverter;
+import io.slingr.endpoints.services.datastores.DataStore;
 import io.slingr.endpoints.services.exchange.Parameter;
+import io.slingr.endpoints.services.rest.RestMethod;
 import io.slingr.endpoints.utils.converters.ContentTypeFormat;
 import io.slingr.endpoints.utils.Json;
 import io.slingr.endpoints.ws.exchange.FunctionRequest;
@@ -17,6 +20,31 @@ import io.slingr.endpoints.ws.exchange.WebServiceResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.time.Clock;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
 /**
  * <p>Freshbooks endpoint
  *
@@ -27,6 +55,25 @@ public class FreshbooksEndpoint extends HttpEndpoint {
     private static final Logger logger = LoggerFactory.getLogger(FreshbooksEndpoint.class);
 
     private static final String FRESHBOOKS_URL_PATTERN = "https://%s.freshbooks.com/api/2.1/xml-in";
+    private static final String FAIL_STATUS = "fail";
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final int DEFAULT_PAGE_CONCURRENCY = 4;
+    private static final int DEFAULT_BULK_CONCURRENCY = 8;
+    private static final int DEFAULT_CURRENCIES_CACHE_TTL = 3600;
+    private static final int DEFAULT_ENTITY_CACHE_TTL = 60;
+    private static final int DEFAULT_ENTITY_CACHE_SIZE = 1000;
+    private static final int DEFAULT_RATE_LIMIT = 10;
+    private static final int DEFAULT_RATE_BURST = 10;
+    private static final int DEFAULT_PAYLOAD_LOG_MAX_LENGTH = 2000;
+    private static final int DEFAULT_POLLING_INTERVAL = 0;
+    private static final int DEFAULT_ASYNC_MAX_PENDING = 1000;
+    private static final String DEFAULT_ACCOUNT_TIMEZONE = "America/New_York";
+    private static final String EXPORT_PROGRESS_EVENT = "exportProgress";
+    private static final String CIRCUIT_CHANGED_EVENT = "circuitChanged";
+    private static final long EXPORT_PROGRESS_INTERVAL = 1000;
+    private static final long WRITE_BEHIND_STOP_TIMEOUT = 10000;
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+    private static final DateTimeFormatter EXPORT_FILE_DATE = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
 
     @EndpointProperty
     private String account;
@@ -34,6 +81,138 @@ public class FreshbooksEndpoint extends HttpEndpoint {
     @EndpointProperty
     private String token;
 
+    @EndpointProperty
+    private String additionalAccounts;
+
+    @EndpointProperty
+    private String accountTimezone;
+
+    @EndpointProperty
+    private String maxConnections;
+
+    @EndpointProperty
+    private String connectTimeout;
+
+    @EndpointProperty
+    private String socketTimeout;
+
+    @EndpointProperty
+    private String idleConnectionTimeout;
+
+    @EndpointProperty
+    private String keepAliveTimeout;
+
+    @EndpointProperty
+    private String payloadLogging;
+
+    @EndpointProperty
+    private String payloadLogMaxLength;
+
+    @EndpointProperty
+    private String payloadLogSampling;
+
+    @EndpointProperty
+    private String rateLimit;
+
+    @EndpointProperty
+    private String rateBurst;
+
+    @EndpointProperty
+    private String pageConcurrency;
+
+    @EndpointProperty
+    private String bulkConcurrency;
+
+    @EndpointProperty
+    private String currenciesCacheTtl;
+
+    @EndpointProperty
+    private String entityCacheTtl;
+
+    @EndpointProperty
+    private String entityCacheSize;
+
+    @EndpointProperty
+    private String pollingInterval;
+
+    @EndpointProperty
+    private String asyncMaxPending;
+
+    @EndpointProperty
+    private String retryMaxAttempts;
+
+    @EndpointProperty
+    private String retryBaseDelay;
+
+    @EndpointProperty
+    private String retryBudget;
+
+    @EndpointProperty
+    private String exportPagesAhead;
+
+    @EndpointProperty
+    private String breakerFailureRate;
+
+    @EndpointProperty
+    private String breakerMinimumCalls;
+
+    @EndpointProperty
+    private String breakerOpenTime;
+
+    @EndpointProperty
+    private String bulkheadMaxConcurrent;
+
+    @EndpointProperty
+    private String bulkheadMaxWait;
+
+    @EndpointProperty
+    private String hedgedReads;
+
+    @EndpointProperty
+    private String hedgePercentile;
+
+    @EndpointProperty
+    private String hedgeBudget;
+
+    @EndpointProperty
+    private String writeBehindWindow;
+
+    @EndpointProperty
+    private String warmUp;
+
+    @EndpointProperty
+    private String warmUpConnections;
+
+    @EndpointProperty
+    private String responseCompression;
+
+    @EndpointProperty
+    private String resultCompressionThreshold;
+
+    @EndpointDataStore(name = "sync_state")
+    private DataStore syncStore;
+
+    @EndpointDataStore(name = "idempotency_keys")
+    private DataStore idempotencyStore;
+
+    private ExecutorService workers;
+    private ListPager pager;
+    private ExecutorService bulkWorkers;
+    private BulkExecutor bulk;
+    private final SingleFlight singleFlight = new SingleFlight();
+    private Accounts accounts;
+    private PayloadLogger payloadLogger;
+    private final EndpointMetrics metrics = new EndpointMetrics();
+    private ScheduledExecutorService scheduler;
+    private ChangePoller changePoller;
+    private ExecutorService asyncWorkers;
+    private ExecutorService hedgeWorkers;
+    private ScheduledExecutorService writeBehindScheduler;
+    private WriteBehindQueue writeBehind;
+    private ResultCompressor resultCompressor;
+    private NdjsonExporter exporter;
+    private WarmUp startup;
+
     @Override
     public String getApiUri() {
         return String.format(FRESHBOOKS_URL_PATTERN, account);
@@ -41,17 +220,251 @@ public class FreshbooksEndpoint extends HttpEndpoint {
 
     @Override
     public void endpointStarted() {
+        startup = new WarmUp(System::nanoTime);
 
         httpService().setDefaultEmptyPath("");
         httpService().setAllowExternalUrl(false);
 
+        final String userAgent = String.format("slingr-%s-%s", properties().getApplicationName(), properties().getEndpointName());
         httpService().setupDefaultHeader(Parameter.CONTENT_TYPE, ContentTypeFormat.XML.getMimeType());
-        httpService().setupDefaultHeader("User-Agent", String.format("slingr-%s-%s", properties().getApplicationName(), properties().getEndpointName()));
+        httpService().setupDefaultHeader("User-Agent", userAgent);
 
         httpService().setupBasicAuthentication(token, "x");
         httpService().setupExceptionConverter(new FreshbooksExceptionHandler());
 
-        logger.info("Configured FreshBooks endpoint");
+        // the accounts share the workers, each one has its own async permits, retry and hedge budgets
+        asyncWorkers = WorkerThreads.newVirtualPool("freshbooks-async");
+        if ("enabled".equalsIgnoreCase(hedgedReads != null ? hedgedReads.trim() : "")) {
+            hedgeWorkers = WorkerThreads.newVirtualPool("freshbooks-hedge");
+        }
+        final List<Account> configured = new ArrayList<>();
+        configured.add(newAccount(account, token, userAgent));
+        for (Map.Entry<String, String> credentials : Accounts.parseCredentials(additionalAccounts).entrySet()) {
+            if (!credentials.getKey().equalsIgnoreCase(account)) {
+                configured.add(newAccount(credentials.getKey(), credentials.getValue(), userAgent));
+            }
+        }
+        accounts = new Accounts(configured);
+
+        payloadLogger = new PayloadLogger(logger, PayloadLogger.Mode.parse(payloadLogging, PayloadLogger.Mode.SUMMARY),
+                ListPager.toInt(payloadLogMaxLength, DEFAULT_PAYLOAD_LOG_MAX_LENGTH), ListPager.toInt(payloadLogSampling, 1));
+        workers = WorkerThreads.newPool("freshbooks-worker");
+        pager = new ListPager(workers, ListPager.toInt(pageConcurrency, DEFAULT_PAGE_CONCURRENCY));
+        exporter = new NdjsonExporter(workers, ListPager.toInt(pageConcurrency, DEFAULT_PAGE_CONCURRENCY),
+                ListPager.toInt(exportPagesAhead, NdjsonExporter.DEFAULT_PAGES_AHEAD));
+        final int window = ListPager.toInt(writeBehindWindow, 0);
+        if (window > 0) {
+            writeBehindScheduler = WorkerThreads.newScheduler("freshbooks-write-behind");
+            writeBehind = new WriteBehindQueue(writeBehindScheduler, workers, window);
+            logger.info(String.format("Merging the updates of the same record within [%s] ms", window));
+        }
+        resultCompressor = new ResultCompressor(ListPager.toInt(resultCompressionThreshold, ResultCompressor.DEFAULT_THRESHOLD));
+        bulkWorkers = WorkerThreads.newVirtualPool("freshbooks-bulk");
+        bulk = new BulkExecutor(bulkWorkers, ListPager.toInt(bulkConcurrency, DEFAULT_BULK_CONCURRENCY));
+        changePoller = new ChangePoller(ChangePoller.SOURCES, this::pollPage, (event, data) -> events().send(event, data));
+        registerGauges();
+
+        final int interval = ListPager.toInt(pollingInterval, DEFAULT_POLLING_INTERVAL);
+        if (interval > 0) {
+            scheduler = WorkerThreads.newScheduler("freshbooks-poller");
+            changePoller.start(scheduler, interval);
+            logger.info(String.format("Polling changes on FreshBooks every [%s] seconds", interval));
+        }
+
+        logger.info(String.format("Configured FreshBooks endpoint for [%s] accounts", configured.size()));
+        startup.started();
+        if ("disabled".equalsIgnoreCase(warmUp != null ? warmUp.trim() : "")) {
+            startup.finished();
+        } else {
+            // the endpoint reports it is not ready until the warm-up finishes
+            workers.submit(this::warmUp);
+        }
+    }
+
+    /**
+     * Loads the XML converters, opens connections to Freshbooks and fetches the currencies of
+     * each account, which also checks the token
+     */
+    private void warmUp() {
+        try {
+            startup.step("converters", WarmUp::primeConverters);
+            final int connections = ListPager.toInt(warmUpConnections, WarmUp.DEFAULT_CONNECTIONS);
+            for (Account account : accounts.all()) {
+                if (connections > 0) {
+                    startup.step(account.name() + ".connections", () -> account.client().preconnect(connections));
+                }
+                startup.step(account.name() + ".currencies", () -> {
+                    final Json currencies = Json.list();
+                    ListPager.addItems(currencies, ListPager.listElement(currencies(account), Operation.CURRENCY_LIST.entity().collection()),
+                            Operation.CURRENCY_LIST.entity().item());
+                    return currencies.toList().size();
+                });
+            }
+        } finally {
+            startup.finished();
+        }
+        logger.info(String.format("FreshBooks endpoint ready, warm-up took [%.3f] seconds", startup.warmUpSeconds()));
+    }
+
+    /**
+     * Creates the connection pool, rate limiter, caches, circuit breakers and bulkheads of an account
+     */
+    private Account newAccount(String name, String accountToken, String userAgent) {
+        final FreshbooksClient client = new FreshbooksClient(String.format(FRESHBOOKS_URL_PATTERN, name), accountToken, userAgent, new FreshbooksClient.Settings()
+                .maxConnections(ListPager.toInt(maxConnections, FreshbooksClient.Settings.DEFAULT_MAX_CONNECTIONS))
+                .connectTimeout(ListPager.toInt(connectTimeout, FreshbooksClient.Settings.DEFAULT_CONNECT_TIMEOUT))
+                .socketTimeout(ListPager.toInt(socketTimeout, FreshbooksClient.Settings.DEFAULT_SOCKET_TIMEOUT))
+                .idleTimeout(ListPager.toInt(idleConnectionTimeout, FreshbooksClient.Settings.DEFAULT_IDLE_TIMEOUT))
+                .keepAlive(ListPager.toInt(keepAliveTimeout, FreshbooksClient.Settings.DEFAULT_KEEP_ALIVE))
+                .compression(!"disabled".equalsIgnoreCase(responseCompression != null ? responseCompression.trim() : "")),
+                new FreshbooksExceptionHandler());
+        return new Account(name, client,
+                new RateLimiter(ListPager.toInt(rateLimit, DEFAULT_RATE_LIMIT), ListPager.toInt(rateBurst, DEFAULT_RATE_BURST)),
+                new ExpiringCache<>("currencies", ListPager.toInt(currenciesCacheTtl, DEFAULT_CURRENCIES_CACHE_TTL) * 1000L,
+                        0, System::currentTimeMillis, CanonicalJson::copy),
+                new ExpiringCache<>("entities", ListPager.toInt(entityCacheTtl, DEFAULT_ENTITY_CACHE_TTL) * 1000L,
+                        ListPager.toInt(entityCacheSize, DEFAULT_ENTITY_CACHE_SIZE), System::currentTimeMillis, CanonicalJson::copy),
+                new DeltaSync(syncStore, name, accountZone(), Clock.systemUTC()),
+                new IdempotencyKeys(idempotencyStore, name, System::currentTimeMillis),
+                new Retrier(ListPager.toInt(retryMaxAttempts, Retrier.DEFAULT_MAX_ATTEMPTS),
+                        ListPager.toInt(retryBaseDelay, Retrier.DEFAULT_BASE_DELAY), ListPager.toInt(retryBudget, Retrier.DEFAULT_BUDGET_PERCENT)),
+                hedgeWorkers != null ? new Hedger(hedgeWorkers, ListPager.toInt(hedgePercentile, Hedger.DEFAULT_PERCENTILE),
+                        ListPager.toInt(hedgeBudget, Hedger.DEFAULT_BUDGET_PERCENT)) : null,
+                new AsyncRunner(asyncWorkers, ListPager.toInt(asyncMaxPending, DEFAULT_ASYNC_MAX_PENDING),
+                        (event, data, correlationId) -> events().send(event, data, correlationId)),
+                newBreakers(name), newBulkheads());
+    }
+
+    private Map<Operation.Entity, CircuitBreaker> newBreakers(String account) {
+        final Map<Operation.Entity, CircuitBreaker> breakers = new EnumMap<>(Operation.Entity.class);
+        for (Operation.Entity group : Operation.Entity.values()) {
+            breakers.put(group, new CircuitBreaker(group.item(), CircuitBreaker.DEFAULT_WINDOW_SIZE,
+                    ListPager.toInt(breakerMinimumCalls, CircuitBreaker.DEFAULT_MINIMUM_CALLS),
+                    ListPager.toInt(breakerFailureRate, CircuitBreaker.DEFAULT_FAILURE_RATE),
+                    ListPager.toInt(breakerOpenTime, CircuitBreaker.DEFAULT_OPEN_SECONDS) * 1000L,
+                    CircuitBreaker.DEFAULT_TRIAL_CALLS, System::currentTimeMillis,
+                    (name, previous, current) -> sendCircuitChange(account, name, previous, current)));
+        }
+        return breakers;
+    }
+
+    private Map<Operation.Entity, Bulkhead> newBulkheads() {
+        final Map<Operation.Entity, Bulkhead> bulkheads = new EnumMap<>(Operation.Entity.class);
+        for (Operation.Entity group : Operation.Entity.values()) {
+            bulkheads.put(group, new Bulkhead(group.item(), ListPager.toInt(bulkheadMaxConcurrent, Bulkhead.DEFAULT_MAX_CONCURRENT),
+                    ListPager.toInt(bulkheadMaxWait, Bulkhead.DEFAULT_MAX_WAIT)));
+        }
+        return bulkheads;
+    }
+
+    private Json pollPage(ChangePoller.Source source, int page, Consumer<Json> onItem) throws EndpointException {
+        final Json filters = Json.map()
+                .set("page", page)
+                .set("per_page", ListPager.MAX_PER_PAGE);
+        // the items of a page are handed over once the page succeeded, so a failed attempt can be repeated
+        final Account account = accounts.defaultAccount();
+        final List<Json> items = new ArrayList<>();
+        final Json response = account.retrier().execute(() -> Bulkhead.waitForSlot(() -> {
+            items.clear();
+            final Json pageResponse = executeListRequest(account, source.operation, filters, null, items::add);
+            checkFailedResponses(pageResponse);
+            return pageResponse;
+        }, Bulkhead.FAN_OUT_MAX_WAIT), null);
+        items.forEach(onItem);
+        return response;
+    }
+
+    private void sendCircuitChange(String account, String group, CircuitBreaker.State previous, CircuitBreaker.State current) {
+        logger.warn(String.format("Circuit of the FreshBooks %s methods of account [%s] changed from [%s] to [%s]", group, account, previous, current));
+        events().send(CIRCUIT_CHANGED_EVENT, Json.map()
+                .set("account", account)
+                .set("group", group)
+                .set("previousState", previous.name().toLowerCase())
+                .set("state", current.name().toLowerCase()));
+    }
+
+    private ZoneId accountZone() {
+        try {
+            return ZoneId.of(accountTimezone != null && !accountTimezone.trim().isEmpty() ? accountTimezone.trim() : DEFAULT_ACCOUNT_TIMEZONE);
+        } catch (DateTimeException e) {
+            logger.warn(String.format("Invalid account timezone [%s], using [%s]", accountTimezone, DEFAULT_ACCOUNT_TIMEZONE));
+            return ZoneId.of(DEFAULT_ACCOUNT_TIMEZONE);
+        }
+    }
+
+    private void registerGauges() {
+        // the values of the accounts are added up
+        metrics.gauge("accounts", "Accounts served by the endpoint", () -> accounts.all().size());
+        metrics.gauge("rate_limiter_rate", "Current rate of the limiters in requests per second", () -> accounts.sum(a -> a.rateLimiter().currentRate()));
+        metrics.counter("rate_limiter_wait_seconds_total", "Time spent by the requests waiting in the rate limiters", () -> accounts.sum(a -> a.rateLimiter().waitSeconds()));
+        metrics.counter("rate_limiter_delayed_total", "Requests that had to wait in the rate limiters", () -> accounts.sum(a -> a.rateLimiter().delayedRequests()));
+        metrics.counter("cache_currencies_hits_total", "Hits of the currencies caches", () -> accounts.sum(a -> a.currenciesCache().hits()));
+        metrics.counter("cache_currencies_misses_total", "Misses of the currencies caches", () -> accounts.sum(a -> a.currenciesCache().misses()));
+        metrics.counter("cache_entities_hits_total", "Hits of the entity caches", () -> accounts.sum(a -> a.entityCache().hits()));
+        metrics.counter("cache_entities_misses_total", "Misses of the entity caches", () -> accounts.sum(a -> a.entityCache().misses()));
+        metrics.counter("cache_entities_evictions_total", "Evictions of the entity caches", () -> accounts.sum(a -> a.entityCache().evictions()));
+        metrics.gauge("cache_entities_size", "Entries in the entity caches", () -> accounts.sum(a -> a.entityCache().size()));
+        metrics.counter("coalesced_reads_total", "Reads that shared an identical call in flight", singleFlight::shared);
+        metrics.gauge("pool_leased", "Connections to FreshBooks in use", () -> accounts.sum(a -> a.client().poolStats().getLeased()));
+        metrics.gauge("pool_pending", "Requests waiting for a connection to FreshBooks", () -> accounts.sum(a -> a.client().poolStats().getPending()));
+        metrics.gauge("pool_available", "Idle connections to FreshBooks kept alive", () -> accounts.sum(a -> a.client().poolStats().getAvailable()));
+        metrics.gauge("pool_max", "Maximum number of connections to FreshBooks", () -> accounts.sum(a -> a.client().poolStats().getMax()));
+        metrics.counter("response_wire_bytes_total", "Bytes of the FreshBooks responses as they were received", () -> accounts.sum(a -> a.client().wireBytes()));
+        metrics.counter("response_content_bytes_total", "Bytes of the FreshBooks responses once decompressed", () -> accounts.sum(a -> a.client().contentBytes()));
+        metrics.counter("response_compressed_total", "FreshBooks responses received compressed", () -> accounts.sum(a -> a.client().compressedResponses()));
+        for (Account account : accounts.all()) {
+            for (Operation.Entity group : Operation.Entity.values()) {
+                final CircuitBreaker breaker = account.breaker(group);
+                final Bulkhead bulkhead = account.bulkhead(group);
+                final String labels = EndpointMetrics.labels("account", account.name(), "group", group.item());
+                metrics.gauge("circuit_state", labels, "State of the circuit of the method group, 0 closed, 1 half open and 2 open",
+                        () -> breaker.state().ordinal());
+                metrics.counter("circuit_opened_total", labels, "Times the circuit of the method group opened", breaker::opened);
+                metrics.counter("circuit_rejected_total", labels, "Calls to the method group rejected by the open circuit", breaker::rejected);
+                metrics.gauge("bulkhead_in_flight", labels, "Calls to the method group in flight", bulkhead::inFlight);
+                metrics.counter("bulkhead_rejected_total", labels, "Calls to the method group rejected by the bulkhead", bulkhead::rejected);
+            }
+        }
+        if (hedgeWorkers != null) {
+            metrics.counter("hedges_total", "Reads sent a second time because the first request was slow", () -> accounts.sum(a -> a.hedger().hedges()));
+            metrics.counter("hedges_won_total", "Hedged reads where the second request answered first", () -> accounts.sum(a -> a.hedger().hedgesWon()));
+        }
+        if (writeBehind != null) {
+            metrics.gauge("write_behind_pending", "Records with updates waiting for the end of their window", writeBehind::pending);
+            metrics.counter("write_behind_updates_total", "Updates received while the write-behind is enabled", writeBehind::updates);
+            metrics.counter("write_behind_merged_total", "Updates merged into the update of another call", writeBehind::merged);
+        }
+        metrics.gauge("ready", "1 when the warm-up finished and the endpoint is ready", () -> startup.isReady() ? 1 : 0);
+        metrics.gauge("startup_seconds", "Time spent starting the endpoint, without the warm-up", startup::startupSeconds);
+        metrics.gauge("warm_up_seconds", "Time spent in the warm-up after the start, zero until it finishes", startup::warmUpSeconds);
+        metrics.counter("result_compressed_total", "Function results compressed before returning them", resultCompressor::compressed);
+        metrics.counter("result_saved_bytes_total", "Bytes saved by the compressed function results", resultCompressor::savedBytes);
+        metrics.gauge("async_pending", "Async calls waiting or running", () -> accounts.sum(a -> a.async().pending()));
+        metrics.counter("retries_total", "Calls repeated after a transient error", () -> accounts.sum(a -> a.retrier().retries()));
+        metrics.counter("retry_budget_exhausted_total", "Transient errors not retried because the retry budget was spent", () -> accounts.sum(a -> a.retrier().budgetExhausted()));
+        metrics.counter("polling_events_total", "Change events sent by the poller", changePoller::sentEvents);
+        metrics.counter("polling_failed_total", "Polls where at least one list failed", changePoller::failedPolls);
+    }
+
+    @Override
+    public void endpointStopped(String cause) {
+        if (changePoller != null) {
+            changePoller.stop();
+        }
+        if (writeBehind != null) {
+            // the updates already accepted are not lost
+            writeBehind.flushAll(WRITE_BEHIND_STOP_TIMEOUT);
+        }
+        WorkerThreads.shutdown(writeBehindScheduler);
+        WorkerThreads.shutdown(scheduler);
+        WorkerThreads.shutdown(asyncWorkers);
+        WorkerThreads.shutdown(workers);
+        WorkerThreads.shutdown(bulkWorkers);
+        WorkerThreads.shutdown(hedgeWorkers);
+        if (accounts != null) {
+            accounts.close();
+        }
+        logger.info(String.format("FreshBooks endpoint stopped [%s]", cause));
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////////
@@ -137,10 +550,7 @@ public class FreshbooksEndpoint extends HttpEndpoint {
      */
     @EndpointFunction
     public Json createClient(Json request){
-        final Json client = Json.map().set("client", request);
-        final Json response = executeRequest("client.create", client, "Create client", "Client created");
-        checkFailedResponses(response);
-        return response;
+        return execute(Operation.CLIENT_CREATE, request);
     }
 
     /**
@@ -148,10 +558,7 @@ public class FreshbooksEndpoint extends HttpEndpoint {
      */
     @EndpointFunction
     public Json updateClient(Json request){
-        final Json client = Json.map().set("client", request);
-        final Json response = executeRequest("client.update", client, "Update client", "Client updated");
-        checkFailedResponses(response);
-        return response;
+        return update(Operation.CLIENT_UPDATE, request);
     }
 
     /**
@@ -159,9 +566,7 @@ public class FreshbooksEndpoint extends HttpEndpoint {
      */
     @EndpointFunction
     public Json removeClient(Json request){
-        final Json response = executeRequest("client.delete", request, "Remove client", "Client removed");
-        checkFailedResponses(response);
-        return response;
+        return remove(Operation.CLIENT_DELETE, request);
     }
 
     /**
@@ -169,9 +574,7 @@ public class FreshbooksEndpoint extends HttpEndpoint {
      */
     @EndpointFunction
     public Json findClientById(Json request){
-        final Json response = executeRequest("client.get", request, "Find client by id", "Found client");
-        checkFailedResponses(response);
-        return response;
+        return findById(Operation.CLIENT_GET, request);
     }
 
     /**
@@ -179,9 +582,40 @@ public class FreshbooksEndpoint extends HttpEndpoint {
      */
     @EndpointFunction
     public Json findClients(Json request){
-        final Json response = executeRequest("client.list", request, "Find clients", "Found clients");
-        checkFailedResponses(response);
-        return response;
+        return resultCompressor.compress(execute(Operation.CLIENT_LIST, request));
+    }
+
+    /**
+     * Find all clients request, fetching all the pages
+     */
+    @EndpointFunction
+    public Json findAllClients(Json request){
+        return resultCompressor.compress(findAll(Operation.CLIENT_LIST, request));
+    }
+
+    /**
+     * Sync clients request, returns the next batch of clients changed since the last sync
+     */
+    @EndpointFunction
+    public Json syncClients(Json request){
+        final Account account = account(request);
+        return account.deltaSync().next("client", "clients", request, filters -> execute(account, Operation.CLIENT_LIST, filters, null));
+    }
+
+    /**
+     * Create clients request, one result per client
+     */
+    @EndpointFunction
+    public Json createClients(Json request){
+        return bulk.execute(BulkExecutor.items(request), item -> Bulkhead.waitForSlot(() -> createClient(item), Bulkhead.FAN_OUT_MAX_WAIT));
+    }
+
+    /**
+     * Update clients request, one result per client
+     */
+    @EndpointFunction
+    public Json updateClients(Json request){
+        return bulk.execute(BulkExecutor.items(request), item -> Bulkhead.waitForSlot(() -> updateClient(item), Bulkhead.FAN_OUT_MAX_WAIT));
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////////
@@ -193,10 +627,7 @@ public class FreshbooksEndpoint extends HttpEndpoint {
      */
     @EndpointFunction
     public Json createInvoice(Json request){
-        final Json invoice = Json.map().set("invoice", request);
-        final Json response = executeRequest("invoice.create", invoice, "Create invoice", "Invoice created");
-        checkFailedResponses(response);
-        return response;
+        return execute(Operation.INVOICE_CREATE, request);
     }
 
     /**
@@ -204,10 +635,7 @@ public class FreshbooksEndpoint extends HttpEndpoint {
      */
     @EndpointFunction
     public Json updateInvoice(Json request){
-        final Json invoice = Json.map().set("invoice", request);
-        final Json response = executeRequest("invoice.update", invoice, "Update invoice", "Invoice updated");
-        checkFailedResponses(response);
-        return response;
+        return update(Operation.INVOICE_UPDATE, request);
     }
 
     /**
@@ -215,9 +643,7 @@ public class FreshbooksEndpoint extends HttpEndpoint {
      */
     @EndpointFunction
     public Json removeInvoice(Json request){
-        final Json response = executeRequest("invoice.delete", request, "Remove invoice", "Invoice removed");
-        checkFailedResponses(response);
-        return response;
+        return remove(Operation.INVOICE_DELETE, request);
     }
 
     /**
@@ -225,9 +651,7 @@ public class FreshbooksEndpoint extends HttpEndpoint {
      */
     @EndpointFunction
     public Json findInvoiceById(Json request){
-        final Json response = executeRequest("invoice.get", request, "Find invoice by id", "Found invoice");
-        checkFailedResponses(response);
-        return response;
+        return findById(Operation.INVOICE_GET, request);
     }
 
     /**
@@ -235,9 +659,71 @@ public class FreshbooksEndpoint extends HttpEndpoint {
      */
     @EndpointFunction
     public Json findInvoices(Json request){
-        final Json response = executeRequest("invoice.list", request, "Find invoices", "Found invoices");
-        checkFailedResponses(response);
-        return response;
+        return resultCompressor.compress(execute(Operation.INVOICE_LIST, request));
+    }
+
+    /**
+     * Find all invoices request, fetching all the pages
+     */
+    @EndpointFunction
+    public Json findAllInvoices(Json request){
+        return resultCompressor.compress(findAll(Operation.INVOICE_LIST, request));
+    }
+
+    /**
+     * Aggregate invoices request, walks all the pages of the invoices matching the filters and
+     * returns only the totals of each group
+     */
+    @EndpointFunction
+    public Json aggregateInvoices(Json request){
+        final RequestOptions options = RequestOptions.parse(request);
+        final Account account = accounts.get(options.account());
+        final Json filters = options.body() != null ? Json.map().merge(options.body()) : Json.map();
+        final InvoiceAggregator aggregator = new InvoiceAggregator(InvoiceAggregator.parseGroupBy(filters.object("groupBy")));
+        filters.remove("groupBy");
+
+        // the invoices are aggregated while the pages are parsed, only the aggregated fields are read
+        pager.streamAll(Operation.INVOICE_LIST.entity().collection(), page -> {
+            final Json pageRequest = Json.map().merge(filters)
+                    .set("page", page)
+                    .set("per_page", ListPager.MAX_PER_PAGE);
+            // each attempt aggregates the page apart and it is merged once the page succeeded,
+            // so a failed attempt can be repeated
+            return account.retrier().execute(() -> Bulkhead.waitForSlot(() -> {
+                final InvoiceAggregator partial = aggregator.partial();
+                final Json response = executeListRequest(account, Operation.INVOICE_LIST, pageRequest,
+                        InvoiceAggregator.PROJECTION, partial::add);
+                checkFailedResponses(response);
+                aggregator.merge(partial);
+                return response;
+            }, Bulkhead.FAN_OUT_MAX_WAIT), null);
+        });
+        return aggregator.result();
+    }
+
+    /**
+     * Sync invoices request, returns the next batch of invoices changed since the last sync
+     */
+    @EndpointFunction
+    public Json syncInvoices(Json request){
+        final Account account = account(request);
+        return account.deltaSync().next("invoice", "invoices", request, filters -> execute(account, Operation.INVOICE_LIST, filters, null));
+    }
+
+    /**
+     * Create invoices request, one result per invoice
+     */
+    @EndpointFunction
+    public Json createInvoices(Json request){
+        return bulk.execute(BulkExecutor.items(request), item -> Bulkhead.waitForSlot(() -> createInvoice(item), Bulkhead.FAN_OUT_MAX_WAIT));
+    }
+
+    /**
+     * Update invoices request, one result per invoice
+     */
+    @EndpointFunction
+    public Json updateInvoices(Json request){
+        return bulk.execute(BulkExecutor.items(request), item -> Bulkhead.waitForSlot(() -> updateInvoice(item), Bulkhead.FAN_OUT_MAX_WAIT));
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////////
@@ -249,10 +735,7 @@ public class FreshbooksEndpoint extends HttpEndpoint {
      */
     @EndpointFunction
     public Json createRecurring(Json request){
-        final Json recurring = Json.map().set("recurring", request);
-        final Json response = executeRequest("recurring.create", recurring, "Create recurring profile", "Recurring profile created");
-        checkFailedResponses(response);
-        return response;
+        return execute(Operation.RECURRING_CREATE, request);
     }
 
     /**
@@ -260,10 +743,7 @@ public class FreshbooksEndpoint extends HttpEndpoint {
      */
     @EndpointFunction
     public Json updateRecurring(Json request){
-        final Json recurring = Json.map().set("recurring", request);
-        final Json response = executeRequest("recurring.update", recurring, "Update recurring profile", "Recurring profile updated");
-        checkFailedResponses(response);
-        return response;
+        return update(Operation.RECURRING_UPDATE, request);
     }
 
     /**
@@ -271,9 +751,7 @@ public class FreshbooksEndpoint extends HttpEndpoint {
      */
     @EndpointFunction
     public Json removeRecurring(Json request){
-        final Json response = executeRequest("recurring.delete", request, "Remove recurring profile", "Recurring profile removed");
-        checkFailedResponses(response);
-        return response;
+        return remove(Operation.RECURRING_DELETE, request);
     }
 
     /**
@@ -281,9 +759,7 @@ public class FreshbooksEndpoint extends HttpEndpoint {
      */
     @EndpointFunction
     public Json findRecurringById(Json request){
-        final Json response = executeRequest("recurring.get", request, "Find recurring profile by id", "Found recurring profile");
-        checkFailedResponses(response);
-        return response;
+        return findById(Operation.RECURRING_GET, request);
     }
 
     /**
@@ -291,91 +767,904 @@ public class FreshbooksEndpoint extends HttpEndpoint {
      */
     @EndpointFunction
     public Json findRecurring(Json request){
-        final Json response = executeRequest("recurring.list", request, "Find recurring profiles", "Found recurring profiles");
-        checkFailedResponses(response);
-        return response;
+        return resultCompressor.compress(execute(Operation.RECURRING_LIST, request));
     }
 
-    ///////////////////////////////////////////////////////////////////////////////////////////////
-    // Currencies
-    ///////////////////////////////////////////////////////////////////////////////////////////////
-
     /**
-     * Find currencies request
+     * Find all recurring profiles request, fetching all the pages
      */
     @EndpointFunction
-    public Json findCurrencies(Json request){
-        final Json response = executeRequest("currency.list", null, "Find currencies", "Found currencies");
-        checkFailedResponses(response);
-        return response;
+    public Json findAllRecurring(Json request){
+        return resultCompressor.compress(findAll(Operation.RECURRING_LIST, request));
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////////
-    // Helper methods
+    // Async functions
     ///////////////////////////////////////////////////////////////////////////////////////////////
 
     /**
-     * All the webhooks are disabled
+     * Create client request, the response is sent on the 'asyncResult' callback
      */
-    @EndpointWebService
-    public WebServiceResponse webhooksAreDisabled(){
-        return HttpService.defaultWebhookResponse("Invalid request", 404);
+    @EndpointFunction
+    public Json createClientAsync(FunctionRequest request){
+        return account(request.getJsonParams()).async().submit("createClient", request.getFunctionId(), request.getJsonParams(), this::createClient);
     }
 
     /**
-     * Executes the request on the Freshbooks services
-     *
-     * @param method name of the freshbooks method
-     * @param requestBody body of the request
-     * @param iniLogMessage message to show before to execute request
-     * @param endLogMessage message to show after receive the response
-     * @return response from freshbooks
-     * @throws EndpointException exception if something is failing
+     * Update client request, the response is sent on the 'asyncResult' callback
      */
-    private Json executeRequest(String method, Json requestBody, String iniLogMessage, String endLogMessage) throws EndpointException {
-        Json request = Json.map().setIfNotEmpty("@method", method);
-        if(requestBody!= null) {
-            request.merge(requestBody);
-        }
-
-        request =  Json.map().set("body", Json.map().set("request", request));
+    @EndpointFunction
+    public Json updateClientAsync(FunctionRequest request){
+        return account(request.getJsonParams()).async().submit("updateClient", request.getFunctionId(), request.getJsonParams(), this::updateClient);
+    }
 
-        logger.info(String.format("%s [%s]", iniLogMessage, request));
+    /**
+     * Remove client request, the response is sent on the 'asyncResult' callback
+     */
+    @EndpointFunction
+    public Json removeClientAsync(FunctionRequest request){
+        return account(request.getJsonParams()).async().submit("removeClient", request.getFunctionId(), request.getJsonParams(), this::removeClient);
+    }
 
-        final Json response = httpService().post(request);
+    /**
+     * Find clients request, the response is sent on the 'asyncResult' callback
+     */
+    @EndpointFunction
+    public Json findClientsAsync(FunctionRequest request){
+        return account(request.getJsonParams()).async().submit("findClients", request.getFunctionId(), request.getJsonParams(), this::findClients);
+    }
 
-        logger.info(String.format("%s [%s]", endLogMessage, response));
-        return response;
+    /**
+     * Find all clients request, the response is sent on the 'asyncResult' callback
+     */
+    @EndpointFunction
+    public Json findAllClientsAsync(FunctionRequest request){
+        return account(request.getJsonParams()).async().submit("findAllClients", request.getFunctionId(), request.getJsonParams(), this::findAllClients);
     }
 
     /**
-     * Converts the Freshbooks errors on endpoint exceptions
-     *
-     * @param body response from freshbooks to check
-     * @throws EndpointException exception equivalent to the freshbooks error
+     * Create invoice request, the response is sent on the 'asyncResult' callback
      */
-    private static void checkFailedResponses(Json body) throws EndpointException {
-        if(body != null && body.contains("response") && body.json("response").contains("@status")){
-            if("fail".equalsIgnoreCase(body.json("response").string("@status"))){
-                final Json error = body.json("response");
+    @EndpointFunction
+    public Json createInvoiceAsync(FunctionRequest request){
+        return account(request.getJsonParams()).async().submit("createInvoice", request.getFunctionId(), request.getJsonParams(), this::createInvoice);
+    }
 
-                final StringBuilder message = new StringBuilder();
-                message.append("FreshBooks error ");
-                if(body.json("response").contains("error")){
-                    message.append("[").append(body.json("response").string("error")).append("] ");
-                }
+    /**
+     * Update invoice request, the response is sent on the 'asyncResult' callback
+     */
+    @EndpointFunction
+    public Json updateInvoiceAsync(FunctionRequest request){
+        return account(request.getJsonParams()).async().submit("updateInvoice", request.getFunctionId(), request.getJsonParams(), this::updateInvoice);
+    }
 
-                throw EndpointException.permanent(ErrorCode.API, message.toString(), error).returnCode(400);
-            }
-        }
+    /**
+     * Remove invoice request, the response is sent on the 'asyncResult' callback
+     */
+    @EndpointFunction
+    public Json removeInvoiceAsync(FunctionRequest request){
+        return account(request.getJsonParams()).async().submit("removeInvoice", request.getFunctionId(), request.getJsonParams(), this::removeInvoice);
     }
 
     /**
-     * Parse the Freshbooks exceptions
+     * Find invoices request, the response is sent on the 'asyncResult' callback
+     */
+    @EndpointFunction
+    public Json findInvoicesAsync(FunctionRequest request){
+        return account(request.getJsonParams()).async().submit("findInvoices", request.getFunctionId(), request.getJsonParams(), this::findInvoices);
+    }
+
+    /**
+     * Find all invoices request, the response is sent on the 'asyncResult' callback
+     */
+    @EndpointFunction
+    public Json findAllInvoicesAsync(FunctionRequest request){
+        return account(request.getJsonParams()).async().submit("findAllInvoices", request.getFunctionId(), request.getJsonParams(), this::findAllInvoices);
+    }
+
+    /**
+     * Aggregate invoices request, the response is sent on the 'asyncResult' callback
+     */
+    @EndpointFunction
+    public Json aggregateInvoicesAsync(FunctionRequest request){
+        return account(request.getJsonParams()).async().submit("aggregateInvoices", request.getFunctionId(), request.getJsonParams(), this::aggregateInvoices);
+    }
+
+    /**
+     * Create recurring request, the response is sent on the 'asyncResult' callback
+     */
+    @EndpointFunction
+    public Json createRecurringAsync(FunctionRequest request){
+        return account(request.getJsonParams()).async().submit("createRecurring", request.getFunctionId(), request.getJsonParams(), this::createRecurring);
+    }
+
+    /**
+     * Update recurring request, the response is sent on the 'asyncResult' callback
+     */
+    @EndpointFunction
+    public Json updateRecurringAsync(FunctionRequest request){
+        return account(request.getJsonParams()).async().submit("updateRecurring", request.getFunctionId(), request.getJsonParams(), this::updateRecurring);
+    }
+
+    /**
+     * Remove recurring request, the response is sent on the 'asyncResult' callback
+     */
+    @EndpointFunction
+    public Json removeRecurringAsync(FunctionRequest request){
+        return account(request.getJsonParams()).async().submit("removeRecurring", request.getFunctionId(), request.getJsonParams(), this::removeRecurring);
+    }
+
+    /**
+     * Find recurring request, the response is sent on the 'asyncResult' callback
+     */
+    @EndpointFunction
+    public Json findRecurringAsync(FunctionRequest request){
+        return account(request.getJsonParams()).async().submit("findRecurring", request.getFunctionId(), request.getJsonParams(), this::findRecurring);
+    }
+
+    /**
+     * Find all recurring request, the response is sent on the 'asyncResult' callback
+     */
+    @EndpointFunction
+    public Json findAllRecurringAsync(FunctionRequest request){
+        return account(request.getJsonParams()).async().submit("findAllRecurring", request.getFunctionId(), request.getJsonParams(), this::findAllRecurring);
+    }
+
+    /**
+     * Create clients request, the response is sent on the 'asyncResult' callback
+     */
+    @EndpointFunction
+    public Json createClientsAsync(FunctionRequest request){
+        return account(request.getJsonParams()).async().submit("createClients", request.getFunctionId(), request.getJsonParams(), this::createClients);
+    }
+
+    /**
+     * Update clients request, the response is sent on the 'asyncResult' callback
+     */
+    @EndpointFunction
+    public Json updateClientsAsync(FunctionRequest request){
+        return account(request.getJsonParams()).async().submit("updateClients", request.getFunctionId(), request.getJsonParams(), this::updateClients);
+    }
+
+    /**
+     * Create invoices request, the response is sent on the 'asyncResult' callback
+     */
+    @EndpointFunction
+    public Json createInvoicesAsync(FunctionRequest request){
+        return account(request.getJsonParams()).async().submit("createInvoices", request.getFunctionId(), request.getJsonParams(), this::createInvoices);
+    }
+
+    /**
+     * Update invoices request, the response is sent on the 'asyncResult' callback
+     */
+    @EndpointFunction
+    public Json updateInvoicesAsync(FunctionRequest request){
+        return account(request.getJsonParams()).async().submit("updateInvoices", request.getFunctionId(), request.getJsonParams(), this::updateInvoices);
+    }
+
+    /**
+     * Returns the counters of the async calls of the account
+     */
+    @EndpointFunction
+    public Json asyncStats(Json request){
+        return account(request).async().stats();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Export
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Export request, writes all the invoices, clients or recurring profiles matching the filters
+     * to a NDJSON file. The export runs in background, the progress is sent on the 'exportProgress'
+     * event and the file on the 'asyncResult' callback.
+     */
+    @EndpointFunction
+    public Json exportToFile(FunctionRequest request){
+        final Json params = request.getJsonParams() != null ? request.getJsonParams() : Json.map();
+        final Operation operation = exportOperation(params.string("entity"));
+        final String exportId = request.getFunctionId() != null ? request.getFunctionId() : UUID.randomUUID().toString();
+        return account(params).async().submit("exportToFile", exportId, params, p -> export(operation, exportId, p));
+    }
+
+    private static Operation exportOperation(String entity) throws EndpointException {
+        if (entity != null) {
+            for (Operation.Entity candidate : Operation.Entity.values()) {
+                if (candidate.item().equalsIgnoreCase(entity.trim()) || candidate.collection().equalsIgnoreCase(entity.trim())) {
+                    final Operation operation = Operation.of(candidate, Operation.Kind.LIST);
+                    if (operation != null) {
+                        return operation;
+                    }
+                }
+            }
+        }
+        throw EndpointException.permanent(ErrorCode.ARGUMENT, String.format("Invalid entity to export [%s], valid values are invoices, clients and recurring", entity));
+    }
+
+    /**
+     * Streams the lines to the files service while the pages are fetched. The upload reads from a
+     * pipe, so neither the list nor the file are held in memory.
+     */
+    private Json export(Operation operation, String exportId, Json params) throws EndpointException {
+        final boolean gzip = Boolean.TRUE.equals(params.bool("gzip"));
+        final String fileName = params.string("fileName") != null ? params.string("fileName")
+                : String.format("%s-%s.ndjson%s", operation.entity().collection(), LocalDateTime.now(ZoneOffset.UTC).format(EXPORT_FILE_DATE), gzip ? ".gz" : "");
+        final String contentType = gzip ? "application/gzip" : "application/x-ndjson";
+        final RequestOptions options = RequestOptions.parse(params);
+        final Account account = accounts.get(options.account());
+        final Json filters = Json.map().merge(options.body())
+                .remove("entity")
+                .remove("gzip")
+                .remove("fileName");
+
+        final PipedInputStream in = new PipedInputStream(EXPORT_BUFFER_SIZE);
+        final Future<Json> upload;
+        final NdjsonExporter.Progress progress;
+        try {
+            final OutputStream out = gzip
+                    ? new GZIPOutputStream(new PipedOutputStream(in), EXPORT_BUFFER_SIZE)
+                    : new BufferedOutputStream(new PipedOutputStream(in), EXPORT_BUFFER_SIZE);
+            upload = asyncWorkers.submit(() -> {
+                try {
+                    return files().upload(fileName, in, contentType);
+                } finally {
+                    // a writer blocked on the pipe fails instead of waiting forever
+                    in.close();
+                }
+            });
+            try {
+                progress = exporter.export(operation.entity().collection(), operation.entity().item(), page -> {
+                    final Json pageRequest = Json.map().merge(filters)
+                            .set("page", page)
+                            .set("per_page", ListPager.MAX_PER_PAGE);
+                    final Json response = Bulkhead.waitForSlot(() -> executeListRequest(account, operation, pageRequest, null, null),
+                            Bulkhead.FAN_OUT_MAX_WAIT);
+                    checkFailedResponses(response);
+                    return response;
+                }, out, exportProgressSender(operation, exportId));
+                // closing the stream ends the file
+                out.close();
+            } catch (IOException | RuntimeException e) {
+                // the reader is closed first, so the upload fails instead of storing a truncated file
+                in.close();
+                upload.cancel(true);
+                throw e;
+            }
+        } catch (IOException e) {
+            throw EndpointException.permanent(ErrorCode.GENERAL, String.format("Error writing the export [%s]", e.getMessage()), e);
+        }
+
+        final Json file;
+        try {
+            file = upload.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw EndpointException.permanent(ErrorCode.GENERAL, "Interrupted while uploading the export", e);
+        } catch (ExecutionException e) {
+            throw EndpointException.permanent(ErrorCode.GENERAL, String.format("Error uploading the export [%s]", e.getCause()), e.getCause());
+        }
+        logger.info(String.format("Exported [%s] %s of account [%s] to file [%s]", progress.items(), operation.entity().collection(), account.name(), fileName));
+        return progress.toJson()
+                .set("exportId", exportId)
+                .set("account", account.name())
+                .set("entity", operation.entity().collection())
+                .set("fileName", fileName)
+                .set("contentType", contentType)
+                .set("file", file);
+    }
+
+    private NdjsonExporter.ProgressListener exportProgressSender(Operation operation, String exportId) {
+        final long[] lastSent = {0};
+        return progress -> {
+            final long now = System.currentTimeMillis();
+            if (now - lastSent[0] >= EXPORT_PROGRESS_INTERVAL) {
+                lastSent[0] = now;
+                events().send(EXPORT_PROGRESS_EVENT, progress.toJson()
+                        .set("exportId", exportId)
+                        .set("entity", operation.entity().collection()));
+            }
+        };
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Currencies
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Find currencies request
+     */
+    @EndpointFunction
+    public Json findCurrencies(Json request){
+        final RequestOptions options = RequestOptions.parse(request);
+        final Json response = currencies(accounts.get(options.account()));
+        final FieldProjection projection = options.fields();
+        return projection != null ? projection.apply(response) : response;
+    }
+
+    private Json currencies(Account account) {
+        return account.currenciesCache().get(Operation.CURRENCY_LIST.method(), method -> execute(account, Operation.CURRENCY_LIST, null, null));
+    }
+
+    /**
+     * Removes the cached list of currencies
+     */
+    @EndpointFunction
+    public Json invalidateCurrenciesCache(Json request){
+        final Account account = account(request);
+        account.currenciesCache().invalidateAll();
+        logger.info(String.format("Currencies cache of account [%s] invalidated", account.name()));
+        return account.currenciesCache().stats();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Metrics
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the counters and latency percentiles of each Freshbooks method
+     */
+    @EndpointFunction
+    public Json metrics(Json request){
+        if (request != null && "prometheus".equalsIgnoreCase(request.string("format"))) {
+            return Json.map().set("text", metrics.toPrometheus());
+        }
+        return metrics.toJson();
+    }
+
+    /**
+     * Returns the counters of the retries and the idempotency keys of the account
+     */
+    @EndpointFunction
+    public Json retryStats(Json request){
+        final Account account = account(request);
+        return account.retrier().stats().set("idempotencyKeys", account.idempotencyKeys().stats());
+    }
+
+    /**
+     * Returns the counters of the rate limiter of the account, including the time spent waiting for it
+     */
+    @EndpointFunction
+    public Json rateLimiterStats(Json request){
+        return account(request).rateLimiter().stats();
+    }
+
+    /**
+     * Returns the state of the circuit and the bulkhead of each method group of the account
+     */
+    @EndpointFunction
+    public Json circuitStats(Json request){
+        final Account account = account(request);
+        final Json stats = Json.map();
+        for (Operation.Entity group : Operation.Entity.values()) {
+            stats.set(group.item(), Json.map()
+                    .set("circuit", account.breaker(group).stats())
+                    .set("bulkhead", account.bulkhead(group).stats()));
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the counters of the hedged reads of the account
+     */
+    @EndpointFunction
+    public Json hedgeStats(Json request){
+        final Hedger hedger = account(request).hedger();
+        return hedger != null ? hedger.stats().set("enabled", true) : Json.map().set("enabled", false);
+    }
+
+    /**
+     * Returns the counters of the updates merged by the write-behind
+     */
+    @EndpointFunction
+    public Json writeBehindStats(Json request){
+        return writeBehind != null ? writeBehind.stats().set("enabled", true) : Json.map().set("enabled", false);
+    }
+
+    /**
+     * Returns the readiness of the endpoint, the startup time and the result of the warm-up steps
+     */
+    @EndpointFunction
+    public Json warmUpStats(Json request){
+        return startup.status();
+    }
+
+    /**
+     * Returns the counters of the poller of changes
+     */
+    @EndpointFunction
+    public Json pollingStats(Json request){
+        return changePoller.stats();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Cache
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the counters of the caches of the account
+     */
+    @EndpointFunction
+    public Json cacheStats(Json request){
+        final Account account = account(request);
+        return Json.map()
+                .set("currencies", account.currenciesCache().stats())
+                .set("entities", account.entityCache().stats())
+                .set("coalescedReads", singleFlight.stats());
+    }
+
+    /**
+     * Removes all the cached clients, invoices and recurring profiles
+     */
+    @EndpointFunction
+    public Json invalidateEntityCache(Json request){
+        final Account account = account(request);
+        account.entityCache().invalidateAll();
+        logger.info(String.format("Entity cache of account [%s] invalidated", account.name()));
+        return account.entityCache().stats();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Helper methods
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * All the webhooks are disabled
+     */
+    @EndpointWebService
+    public WebServiceResponse webhooksAreDisabled(){
+        return HttpService.defaultWebhookResponse("Invalid request", 404);
+    }
+
+    /**
+     * Metrics of the endpoint in the Prometheus text format
+     */
+    @EndpointWebService(path = "metrics", methods = {RestMethod.GET})
+    public WebServiceResponse metricsWebService(){
+        return new WebServiceResponse(metrics.toPrometheus(), PROMETHEUS_CONTENT_TYPE);
+    }
+
+    /**
+     * Readiness of the endpoint, it answers 503 until the warm-up finishes
+     */
+    @EndpointWebService(path = "ready", methods = {RestMethod.GET})
+    public WebServiceResponse readyWebService(){
+        final boolean ready = startup != null && startup.isReady();
+        final Json status = startup != null ? startup.status() : Json.map().set("ready", false);
+        final WebServiceResponse response = new WebServiceResponse(status.toString(), ContentTypeFormat.JSON.getMimeType());
+        response.setHttpCode(ready ? 200 : 503);
+        return response;
+    }
+
+    /**
+     * Executes the operation and checks the response. The cached entity is removed when the
+     * operation modifies it, even if the request fails. The reads only parse the fields selected
+     * with the 'fields' option, when it is present.
+     *
+     * <p>Creates with an 'idempotencyKey' are executed once per key. They are also retried on
+     * transient errors when the record can be looked up by its natural key, so a create that
+     * reached Freshbooks before failing is not repeated.
+     *
+     * @param operation operation to execute
+     * @param request parameters received by the function
+     * @return response from freshbooks
+     * @throws EndpointException exception if something is failing
+     */
+    private Json execute(Operation operation, Json request) throws EndpointException {
+        final RequestOptions options = RequestOptions.parse(request);
+        final Account account = accounts.get(options.account());
+        final Json body = options.body();
+        if (operation.kind() == Operation.Kind.CREATE && options.idempotencyKey() != null) {
+            return account.idempotencyKeys().create(operation.method(), options.idempotencyKey(), naturalKeyLookup(account, operation, body), lookup -> {
+                final Json response = executeRequest(account, operation, body, null, lookup);
+                checkFailedResponses(response);
+                return response;
+            });
+        }
+        return execute(account, operation, body, operation.isRead() ? options.fields() : null);
+    }
+
+    /**
+     * Executes the operation on the account, the body does not contain endpoint options
+     *
+     * @param account account where the operation is executed
+     * @param operation operation to execute
+     * @param body parameters of the Freshbooks method, can be null
+     * @param projection fields of the response to keep, null keeps all of them
+     * @return response from freshbooks
+     * @throws EndpointException exception if something is failing
+     */
+    private Json execute(Account account, Operation operation, Json body, FieldProjection projection) throws EndpointException {
+        try {
+            final Json response = operation.isList()
+                    ? executeListRequest(account, operation, body, projection, null)
+                    : executeRequest(account, operation, body, projection, null);
+            checkFailedResponses(response);
+            return response;
+        } finally {
+            if (operation.invalidatesEntity()) {
+                invalidateEntity(account, operation.entity(), body);
+            }
+        }
+    }
+
+    /**
+     * Executes an update, merging it with the other updates of the record when the write-behind
+     * is enabled. The caller waits for the update that includes its fields.
+     *
+     * @param operation update operation to execute
+     * @param request parameters received by the function
+     * @return response from freshbooks
+     * @throws EndpointException exception if something is failing
+     */
+    private Json update(Operation operation, Json request) throws EndpointException {
+        final RequestOptions options = RequestOptions.parse(request);
+        final Json body = options.body();
+        final String id = body != null ? body.string(operation.entity().idField()) : null;
+        if (writeBehind == null || id == null) {
+            return execute(operation, request);
+        }
+        final Account account = accounts.get(options.account());
+        return WriteBehindQueue.await(writeBehind.update(writeBehindKey(account, operation.entity(), id), body,
+                fields -> execute(account, operation, fields, null)));
+    }
+
+    /**
+     * Executes a delete once the pending updates of the record were sent
+     *
+     * @param operation delete operation to execute
+     * @param request parameters received by the function
+     * @return response from freshbooks
+     * @throws EndpointException exception if something is failing
+     */
+    private Json remove(Operation operation, Json request) throws EndpointException {
+        final RequestOptions options = RequestOptions.parse(request);
+        final Json body = options.body();
+        final String id = body != null ? body.string(operation.entity().idField()) : null;
+        if (writeBehind != null && id != null) {
+            // the callers of the updates receive their failures, the delete is sent anyway
+            writeBehind.flush(writeBehindKey(accounts.get(options.account()), operation.entity(), id))
+                    .handle((result, error) -> null).join();
+        }
+        return execute(operation, request);
+    }
+
+    private static String writeBehindKey(Account account, Operation.Entity entity, String id) {
+        return account.name() + "/" + entityKey(entity, id);
+    }
+
+    /**
+     * @return account selected by the 'account' option of the request
+     */
+    private Account account(Json request) throws EndpointException {
+        return accounts.get(RequestOptions.parse(request).account());
+    }
+
+    /**
+     * Builds the lookup of the record that a create would generate, using the natural key of the
+     * entity (e.g. the number of the invoice)
+     *
+     * @return lookup that returns a response equivalent to the create one, or null if the record
+     * cannot be looked up
+     */
+    private Supplier<Json> naturalKeyLookup(Account account, Operation operation, Json body) {
+        final Operation.Entity entity = operation.entity();
+        final Operation list = Operation.of(entity, Operation.Kind.LIST);
+        final String value = entity.naturalKey() != null && body != null ? body.string(entity.naturalKey()) : null;
+        if (list == null || value == null) {
+            return null;
+        }
+        return () -> {
+            final Json response = execute(account, list, Json.map()
+                    .set(entity.naturalKey(), value)
+                    .set("per_page", ListPager.MAX_PER_PAGE), null);
+            final Json records = Json.list();
+            ListPager.addItems(records, ListPager.listElement(response, entity.collection()), entity.item());
+            for (Object element : records.toList()) {
+                final Json record = Json.fromObject(element);
+                if (record != null && IdempotencyKeys.matches(record, body)) {
+                    return Json.map().set("response", Json.map()
+                            .set("@status", "ok")
+                            .set(entity.idField(), record.string(entity.idField())));
+                }
+            }
+            return null;
+        };
+    }
+
+    /**
+     * Executes the request on the Freshbooks services
+     *
+     * @param account account where the request is sent
+     * @param operation operation to execute
+     * @param requestBody parameters of the request, they are wrapped by the envelope of the operation
+     * @param projection fields of the response to keep, null keeps all of them
+     * @param beforeRetry check executed before retrying a write, the writes are only retried when
+     *                    it is not null. The reads are always retried.
+     * @return response from freshbooks
+     * @throws EndpointException exception if something is failing
+     */
+    private Json executeRequest(Account account, Operation operation, Json requestBody, FieldProjection projection,
+                                Supplier<Json> beforeRetry) throws EndpointException {
+        final String method = operation.method();
+        final PayloadLogger.Call call = payloadLogger.start(method);
+        call.request(operation.iniLogMessage(), requestBody != null ? requestBody : "");
+
+        final Json response;
+        try {
+            final Function<Hedger.Attempt, Json> transport = attempt -> send(account, operation, attempt,
+                    () -> account.client().post(operation.envelope(), requestBody, projection, call::bytes, attempt != null ? attempt::onCancel : null));
+            if (operation.isRead()) {
+                // identical reads that are in flight share the same call
+                response = singleFlight.execute(callKey(account, method, requestBody, projection), () -> account.retrier().execute(hedged(account, operation, transport), null));
+            } else if (beforeRetry != null) {
+                response = account.retrier().execute(() -> transport.apply(null), beforeRetry);
+            } else {
+                response = transport.apply(null);
+            }
+        } catch (EndpointException e) {
+            call.failure(operation.endLogMessage(), e);
+            throw e;
+        }
+
+        final String status = responseStatus(response);
+        call.response(operation.endLogMessage(), status, response);
+        return response;
+    }
+
+    /**
+     * Executes a list request parsing the response while it is received. The items are not
+     * rendered on the logs, only the number of items.
+     *
+     * @param account account where the request is sent
+     * @param operation list operation to execute
+     * @param requestBody filters of the request
+     * @param projection fields of the response to keep, null keeps all of them
+     * @param onItem callback that receives the items one by one, when it is null the items are
+     *               returned in the response. These requests are not retried, because the items
+     *               could have been handed to the callback before the failure: the caller
+     *               retries the whole call, discarding the items of the failed attempt.
+     * @return response from freshbooks
+     * @throws EndpointException exception if something is failing
+     */
+    private Json executeListRequest(Account account, Operation operation, Json requestBody, FieldProjection projection,
+                                    Consumer<Json> onItem) throws EndpointException {
+        final String method = operation.method();
+        final String collection = operation.entity().collection();
+        final String item = operation.entity().item();
+        final PayloadLogger.Call call = payloadLogger.start(method);
+        call.request(operation.iniLogMessage(), requestBody != null ? requestBody : "");
+
+        final Json response;
+        try {
+            if (onItem == null) {
+                final Function<Hedger.Attempt, Json> transport = attempt -> send(account, operation, attempt, () -> account.client().postList(
+                        operation.envelope(), requestBody, collection, item, null, projection, call::bytes, attempt != null ? attempt::onCancel : null));
+                response = singleFlight.execute(callKey(account, method, requestBody, projection), () -> account.retrier().execute(hedged(account, operation, transport), null));
+            } else {
+                response = send(account, operation, null, () -> account.client().postList(operation.envelope(), requestBody, collection, item, onItem, projection, call::bytes, null));
+            }
+        } catch (EndpointException e) {
+            call.failure(operation.endLogMessage(), e);
+            throw e;
+        }
+
+        final String status = responseStatus(response);
+        if (call.isFull()) {
+            // the items are not rendered, only the pagination of the page
+            final Json list = ListPager.listElement(response, collection);
+            final Object items = list != null ? list.object(item) : null;
+            call.response(operation.endLogMessage(), status, list == null ? response : String.format("page %s of %s, %s items",
+                    list.string("@page"), list.string("@pages"), items instanceof List ? ((List<?>) items).size() : 0));
+        } else {
+            call.response(operation.endLogMessage(), status, null);
+        }
+        return response;
+    }
+
+    /**
+     * @return call that sends the request, hedging it when the hedged reads are enabled and the
+     * operation can be hedged
+     */
+    private Supplier<Json> hedged(Account account, Operation operation, Function<Hedger.Attempt, Json> transport) {
+        final Hedger hedger = account.hedger();
+        if (hedger == null || !operation.isHedgeable()) {
+            return () -> transport.apply(null);
+        }
+        final RecentLatency latency = hedger.latency(operation.method());
+        return () -> hedger.execute(latency, transport);
+    }
+
+    /**
+     * @return key of a read for the single flight, the reads of different accounts are never shared
+     */
+    private static String callKey(Account account, String method, Json requestBody, FieldProjection projection) {
+        return account.name() + "/" + SingleFlight.key(method, requestBody, projection);
+    }
+
+    private static String responseStatus(Json response) {
+        return response != null && response.contains("response") ? response.json("response").string("@status") : null;
+    }
+
+    /**
+     * Executes a get method using the entity cache. The cache is skipped when the request does not
+     * contain the id or when the 'skipCache' flag is set, in the last case the fresh response
+     * replaces the cached one. The cache keeps the complete responses, the 'fields' option is
+     * applied to the returned copy.
+     *
+     * @param operation get operation to execute
+     * @param request request received by the function
+     * @return response from freshbooks or from the cache
+     * @throws EndpointException exception if something is failing
+     */
+    private Json findById(Operation operation, Json request) throws EndpointException {
+        final RequestOptions options = RequestOptions.parse(request);
+        final Json body = options.body();
+        final String id = body != null ? body.string(operation.entity().idField()) : null;
+        if (id == null) {
+            return execute(operation, request);
+        }
+
+        final Account account = accounts.get(options.account());
+        final String key = entityKey(operation.entity(), id);
+        final Json response;
+        if (options.skipCache()) {
+            response = execute(account, operation, body, null);
+            account.entityCache().put(key, response);
+        } else {
+            response = account.entityCache().get(key, k -> execute(account, operation, body, null));
+        }
+        final FieldProjection projection = options.fields();
+        return projection != null ? projection.apply(response) : response;
+    }
+
+    /**
+     * Removes the cached entity referenced by the request
+     */
+    private void invalidateEntity(Account account, Operation.Entity entity, Json request) {
+        if (request != null && request.contains(entity.idField())) {
+            account.entityCache().invalidate(entityKey(entity, request.string(entity.idField())));
+        }
+    }
+
+    private static String entityKey(Operation.Entity entity, String id) {
+        return entity.item() + ":" + id;
+    }
+
+    /**
+     * Executes a list method over all the pages and merges the results
+     *
+     * @param operation list operation to execute
+     * @param request filters of the request, the pagination fields are overwritten
+     * @return first response with the items of all the pages
+     * @throws EndpointException exception if any page is failing
+     */
+    private Json findAll(Operation operation, Json request) throws EndpointException {
+        final Json filters = request != null ? request : Json.map();
+        final int perPage = Math.min(ListPager.toInt(filters.string("per_page"), ListPager.MAX_PER_PAGE), ListPager.MAX_PER_PAGE);
+
+        return pager.fetchAll(operation.entity().collection(), operation.entity().item(), page -> {
+            final Json pageRequest = Json.map().merge(filters)
+                    .set("page", page)
+                    .set("per_page", perPage);
+            return Bulkhead.waitForSlot(() -> execute(operation, pageRequest), Bulkhead.FAN_OUT_MAX_WAIT);
+        });
+    }
+
+    /**
+     * Sends the request to Freshbooks once the circuit of the method group of the account is
+     * closed, the rate limiter of the account allows it and there is a free slot in its bulkhead
+     *
+     * @param account account where the request is sent
+     * @param operation operation of the request, selects the method group
+     * @param attempt attempt of a hedged read, null when the request is not hedged
+     * @param transport call that sends the request
+     * @return response from freshbooks
+     * @throws EndpointException exception if something is failing or the request is rejected
+     */
+    private Json send(Account account, Operation operation, Hedger.Attempt attempt, Supplier<Json> transport) throws EndpointException {
+        final String method = operation.method();
+        final CircuitBreaker breaker = account.breaker(operation.entity());
+        final Bulkhead bulkhead = account.bulkhead(operation.entity());
+        final boolean trial;
+        try {
+            trial = breaker.acquire();
+        } catch (EndpointException e) {
+            metrics.recordRejection(method);
+            throw e;
+        }
+        try {
+            // the token is taken first, so the slots of the bulkhead are not held while waiting for it
+            account.rateLimiter().acquire();
+            bulkhead.acquire();
+        } catch (EndpointException e) {
+            breaker.cancel(trial);
+            if (Failures.isRejected(e)) {
+                metrics.recordRejection(method);
+            }
+            throw e;
+        }
+        boolean failed = true;
+        try {
+            // only the request is timed, not the waits of the endpoint before sending it
+            final long start = System.nanoTime();
+            final Json response;
+            try {
+                response = transport.get();
+            } catch (EndpointException e) {
+                if (attempt == null || !attempt.isCancelled()) {
+                    recordFailure(method, System.nanoTime() - start, e);
+                }
+                throw e;
+            }
+            final long nanos = System.nanoTime() - start;
+            metrics.recordResponse(method, nanos, FAIL_STATUS.equalsIgnoreCase(responseStatus(response)));
+            if (account.hedger() != null) {
+                account.hedger().latency(method).record(nanos);
+            }
+            failed = false;
+            return response;
+        } catch (EndpointException e) {
+            // only the failures of a degraded service count, not the errors of the request
+            failed = Failures.isTransient(e);
+            if (RateLimiter.isThrottling(e.getReturnCode())) {
+                account.rateLimiter().onThrottled();
+            }
+            throw e;
+        } finally {
+            if (attempt != null && attempt.isCancelled()) {
+                // the request lost against its hedge and was aborted, it says nothing about Freshbooks
+                breaker.cancel(trial);
+            } else {
+                breaker.record(trial, failed);
+            }
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * Records a request that failed, the permanent errors are answers of Freshbooks (e.g. an HTTP
+     * 4xx or an invalid response) and count as API failures
+     */
+    private void recordFailure(String method, long nanos, EndpointException e) {
+        if (Failures.isTransient(e)) {
+            metrics.recordTransportFailure(method, nanos);
+        } else {
+            metrics.recordResponse(method, nanos, true);
+        }
+    }
+
+    /**
+     * Converts the Freshbooks errors on endpoint exceptions
+     *
+     * @param body response from freshbooks to check
+     * @throws EndpointException exception equivalent to the freshbooks error
+     */
+    static void checkFailedResponses(Json body) throws EndpointException {
+        if(body != null && body.contains("response") && body.json("response").contains("@status")){
+            if(FAIL_STATUS.equalsIgnoreCase(body.json("response").string("@status"))){
+                final Json error = body.json("response");
+
+                final StringBuilder message = new StringBuilder();
+                message.append("FreshBooks error ");
+                if(body.json("response").contains("error")){
+                    message.append("[").append(body.json("response").string("error")).append("] ");
+                }
+
+                throw EndpointException.permanent(ErrorCode.API, message.toString(), error).returnCode(400);
+            }
+        }
+    }
+
+    /**
+     * Parse the Freshbooks exceptions
      */
     private class FreshbooksExceptionHandler implements IHttpExceptionConverter {
         @Override
         public EndpointException convertToEndpointException(Exception exception) {
+            final EndpointException transientException = Failures.toTransient(exception);
+            if (transientException != null) {
+                return transientException;
+            }
             return EndpointException.parseHTTPExceptions(exception, "error", "referral_link");
         }
     }
@@ -0,0 +1,250 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * <p>Sends a second identical request when the first one is slow
+ *
+ * <p>The first request is sent and, if it did not answer after the given percentile of the
+ * recent latencies of the method, the same request is sent again. The latencies are recorded by
+ * the caller around the request only, so the waits of the endpoint before sending it (rate
+ * limiter, bulkhead, retries) do not delay the hedges. The first successful response is
+ * returned and the other request is aborted. Only idempotent reads can be hedged.
+ *
+ * <p>The hedges are limited by a budget like the one of the retries: each call adds a fraction
+ * of a token and each hedge takes a whole one, so when Freshbooks is slow for everybody the
+ * hedges do not double the load.
+ */
+class Hedger {
+    static final int DEFAULT_PERCENTILE = 95;
+    static final int DEFAULT_BUDGET_PERCENT = 5;
+    static final int MIN_SAMPLES = 20;
+    static final long MIN_DELAY = 10;
+
+    private static final double MAX_TOKENS = 10d;
+
+    private final ExecutorService executor;
+    private final double percentile;
+    private final double tokensPerCall;
+
+    private double tokens = MAX_TOKENS;
+
+    private final Map<String, RecentLatency> latencies = new ConcurrentHashMap<>();
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+    private final AtomicLong budgetExhausted = new AtomicLong();
+
+    /**
+     * @param executor executor where the requests are sent
+     * @param percentile percentile of the latency after which the request is hedged, between 1 and 99
+     * @param budgetPercent hedges allowed per 100 calls, once the initial tokens are spent
+     */
+    Hedger(ExecutorService executor, int percentile, int budgetPercent) {
+        this.executor = executor;
+        this.percentile = Math.max(1, Math.min(99, percentile)) / 100d;
+        this.tokensPerCall = Math.max(0, budgetPercent) / 100d;
+    }
+
+    /**
+     * @param method name of the freshbooks method
+     * @return recent latencies of the requests of the method, created if they do not exist
+     */
+    RecentLatency latency(String method) {
+        return latencies.computeIfAbsent(method, m -> new RecentLatency());
+    }
+
+    /**
+     * Executes the call, hedging it when it is slower than usual. The call is executed on the
+     * calling thread when there are not enough latencies of the method to estimate the delay.
+     *
+     * @param latency recent latencies of the method
+     * @param call call to execute, receives the attempt where it registers how it is aborted
+     * @return first successful response, or the exception of the last attempt that failed
+     * @throws EndpointException exception if all the attempts fail
+     */
+    Json execute(RecentLatency latency, Function<Attempt, Json> call) throws EndpointException {
+        calls.incrementAndGet();
+        deposit();
+        final long delay = delay(latency);
+        if (delay < 0) {
+            return call.apply(new Attempt());
+        }
+
+        final Attempt first = new Attempt();
+        final CompletableFuture<Json> firstResponse = CompletableFuture.supplyAsync(() -> call.apply(first), executor);
+        try {
+            return firstResponse.get(delay, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // slower than usual, it is hedged below
+        } catch (InterruptedException e) {
+            first.cancel();
+            Thread.currentThread().interrupt();
+            throw EndpointException.permanent(ErrorCode.GENERAL, "Interrupted while waiting for FreshBooks", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+        if (!withdraw()) {
+            budgetExhausted.incrementAndGet();
+            return await(firstResponse, first);
+        }
+
+        hedges.incrementAndGet();
+        final Attempt second = new Attempt();
+        final CompletableFuture<Json> winner = new CompletableFuture<>();
+        final AtomicInteger pending = new AtomicInteger(2);
+        firstResponse.whenComplete((response, error) -> complete(winner, pending, response, error, false));
+        final CompletableFuture<Json> secondResponse = CompletableFuture.supplyAsync(() -> call.apply(second), executor);
+        secondResponse.whenComplete((response, error) -> complete(winner, pending, response, error, true));
+        try {
+            return await(winner, null);
+        } finally {
+            // the loser is aborted, it does not hold a connection or a slot of the bulkhead
+            if (!firstResponse.isDone()) {
+                first.cancel();
+            }
+            if (!secondResponse.isDone()) {
+                second.cancel();
+            }
+        }
+    }
+
+    private void complete(CompletableFuture<Json> winner, AtomicInteger pending, Json response, Throwable error, boolean hedge) {
+        if (error == null) {
+            if (winner.complete(response) && hedge) {
+                hedgesWon.incrementAndGet();
+            }
+        } else if (pending.decrementAndGet() == 0) {
+            winner.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * @return milliseconds to wait before hedging, negative when the call is not hedged
+     */
+    long delay(RecentLatency latency) {
+        if (latency.count() < MIN_SAMPLES) {
+            return -1;
+        }
+        return Math.max(MIN_DELAY, (long) latency.percentile(percentile));
+    }
+
+    private static Json await(CompletableFuture<Json> response, Attempt attempt) throws EndpointException {
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            if (attempt != null) {
+                attempt.cancel();
+            }
+            Thread.currentThread().interrupt();
+            throw EndpointException.permanent(ErrorCode.GENERAL, "Interrupted while waiting for FreshBooks", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static EndpointException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof EndpointException) {
+            return (EndpointException) cause;
+        }
+        return EndpointException.permanent(ErrorCode.GENERAL, String.format("Error calling FreshBooks [%s]", cause), cause);
+    }
+
+    private synchronized void deposit() {
+        tokens = Math.min(MAX_TOKENS, tokens + tokensPerCall);
+    }
+
+    private synchronized boolean withdraw() {
+        if (tokens < 1d) {
+            return false;
+        }
+        tokens -= 1d;
+        return true;
+    }
+
+    long hedges() {
+        return hedges.get();
+    }
+
+    long hedgesWon() {
+        return hedgesWon.get();
+    }
+
+    /**
+     * @return counters of the hedges
+     */
+    Json stats() {
+        final double available;
+        synchronized (this) {
+            available = tokens;
+        }
+        return Json.map()
+                .set("calls", calls.get())
+                .set("hedges", hedges.get())
+                .set("hedgesWon", hedgesWon.get())
+                .set("budgetExhausted", budgetExhausted.get())
+                .set("budgetTokens", available);
+    }
+
+    /**
+     * One of the requests sent for a call, the request registers how it is aborted
+     */
+    static class Attempt {
+        private Runnable abort;
+        private boolean cancelled;
+
+        /**
+         * @param abort action that aborts the request, it runs at once if the attempt was
+         *              already cancelled
+         */
+        void onCancel(Runnable abort) {
+            synchronized (this) {
+                if (!cancelled) {
+                    this.abort = abort;
+                    return;
+                }
+            }
+            abort.run();
+        }
+
+        void cancel() {
+            final Runnable action;
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                action = abort;
+            }
+            if (action != null) {
+                action.run();
+            }
+        }
+
+        /**
+         * @return true if the attempt lost against the other one, its failure is not a failure of Freshbooks
+         */
+        synchronized boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
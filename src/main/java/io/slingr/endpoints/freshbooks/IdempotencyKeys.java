@@ -0,0 +1,223 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.services.datastores.DataStore;
+import io.slingr.endpoints.utils.Json;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * <p>Creates executed once per idempotency key sent by the app
+ *
+ * <p>The key is claimed as pending before the create is sent and stored as done with the
+ * response when it succeeds. A repeated call with a done key returns the stored response. The
+ * data store has no unique indexes nor conditional updates, so the claim is made while holding a
+ * lock of the key: two calls with the same key cannot both find it free.
+ *
+ * <p>A call that finds the key pending fails with a retryable error while the lease of the call
+ * that claimed it lasts. Once the lease expires, or the create failed, the key can be claimed
+ * again. The previous call may have created the record even if it failed, so the record is
+ * looked up on Freshbooks before creating it again.
+ *
+ * <p>Records without a lookup (e.g. recurring profiles have no natural key) cannot be checked, so
+ * after a transient failure or an expired lease the outcome of the create is unknown: the key is
+ * kept in that state and later calls with it fail with a permanent error instead of creating the
+ * record twice. The app has to check the record on Freshbooks and use a new key if it is missing.
+ * The key is released only when the create failed permanently or was rejected before being sent.
+ */
+class IdempotencyKeys {
+    static final long TTL = TimeUnit.HOURS.toMillis(24);
+    static final long LEASE = TimeUnit.MINUTES.toMillis(5);
+
+    private static final String PENDING = "pending";
+    private static final String DONE = "done";
+    private static final String UNKNOWN = "unknown";
+    private static final int LOCKS = 64;
+
+    private final DataStore store;
+    private final String account;
+    private final LongSupplier clock;
+    private final Object[] locks = new Object[LOCKS];
+
+    private final AtomicLong replays = new AtomicLong();
+    private final AtomicLong foundByLookup = new AtomicLong();
+    private final AtomicLong inProgress = new AtomicLong();
+    private final AtomicLong reclaimed = new AtomicLong();
+    private final AtomicLong unknownOutcome = new AtomicLong();
+
+    /**
+     * @param store data store where the keys are persisted
+     * @param account name of the Freshbooks account
+     * @param clock source of the current time in milliseconds
+     */
+    IdempotencyKeys(DataStore store, String account, LongSupplier clock) {
+        this.store = store;
+        this.account = account;
+        this.clock = clock;
+        for (int i = 0; i < LOCKS; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Executes the create unless it was already executed with the same key
+     *
+     * @param method name of the freshbooks create method
+     * @param idempotencyKey key sent by the app
+     * @param lookup finds the record created by a previous attempt, returns null when it does not
+     *               exist. Can be null when the record cannot be looked up.
+     * @param create executes the create, receives the lookup to use before retrying it
+     * @return response of the create, or equivalent response when the record already existed
+     * @throws EndpointException exception if the create fails, a retryable one if another call
+     * with the same key is in progress, or a permanent one if the outcome of a previous call
+     * cannot be known
+     */
+    Json create(String method, String idempotencyKey, Supplier<Json> lookup,
+                Function<Supplier<Json>, Json> create) throws EndpointException {
+        final String key = account + ":" + method + ":" + idempotencyKey;
+        final Json entry;
+        final boolean abandoned;
+        synchronized (locks[Math.floorMod(key.hashCode(), LOCKS)]) {
+            final long now = clock.getAsLong();
+            Json found = store.findOne(Json.map().set("key", key));
+            if (found != null && now - toLong(found.string("createdAt")) > TTL) {
+                store.removeById(found.string("_id"));
+                found = null;
+            }
+
+            if (found == null) {
+                entry = store.save(Json.map()
+                        .set("key", key)
+                        .set("status", PENDING)
+                        .set("createdAt", now)
+                        .set("leaseUntil", now + LEASE));
+                abandoned = false;
+            } else if (DONE.equals(found.string("status"))) {
+                replays.incrementAndGet();
+                return found.json("response");
+            } else if (UNKNOWN.equals(found.string("status"))) {
+                throw unknownOutcome(idempotencyKey);
+            } else if (now < toLong(found.string("leaseUntil"))) {
+                inProgress.incrementAndGet();
+                throw EndpointException.retryable(ErrorCode.GENERAL, String.format("A create with the idempotency key [%s] is in progress", idempotencyKey))
+                        .returnCode(409);
+            } else if (lookup == null && toLong(found.string("leaseUntil")) != 0) {
+                // the lease expired without being released: the call that claimed the key may
+                // have created the record
+                store.update(found.string("_id"), found.set("status", UNKNOWN));
+                throw unknownOutcome(idempotencyKey);
+            } else {
+                reclaimed.incrementAndGet();
+                store.update(found.string("_id"), found.set("leaseUntil", now + LEASE));
+                entry = found;
+                abandoned = true;
+            }
+        }
+
+        try {
+            if (abandoned && lookup != null) {
+                final Json found = lookup.get();
+                if (found != null) {
+                    foundByLookup.incrementAndGet();
+                    complete(entry, found);
+                    return found;
+                }
+            }
+            final Json response = create.apply(lookup);
+            complete(entry, response);
+            return response;
+        } catch (RuntimeException e) {
+            if (lookup != null || isNotSent(e)) {
+                // the key can be claimed again by the retry of the app
+                store.update(entry.string("_id"), entry.set("leaseUntil", 0));
+            } else {
+                store.update(entry.string("_id"), entry.set("status", UNKNOWN));
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param exception exception thrown by the create
+     * @return true if the record was certainly not created: the create failed permanently or was
+     * rejected by the endpoint before being sent
+     */
+    private static boolean isNotSent(RuntimeException exception) {
+        if (!(exception instanceof EndpointException)) {
+            return false;
+        }
+        final EndpointException e = (EndpointException) exception;
+        return Failures.isRejected(e) || !Failures.isTransient(e);
+    }
+
+    private EndpointException unknownOutcome(String idempotencyKey) {
+        unknownOutcome.incrementAndGet();
+        return EndpointException.permanent(ErrorCode.GENERAL, String.format("The outcome of the create with the idempotency key [%s] is unknown, "
+                + "check if the record exists on Freshbooks and use a new key to create it again", idempotencyKey))
+                .returnCode(409);
+    }
+
+    /**
+     * Checks if the record was created with the parameters of the request. All the simple values
+     * of the request that are present on the record have to be equal, the numbers are compared by
+     * value (e.g. '10' and '10.00').
+     *
+     * @param record record found on Freshbooks
+     * @param request parameters of the create
+     * @return true if the record matches the request
+     */
+    static boolean matches(Json record, Json request) {
+        for (String key : request.keys()) {
+            final Object expected = request.object(key);
+            if (expected instanceof Map || expected instanceof List || expected instanceof Json
+                    || expected == null || !record.contains(key)) {
+                continue;
+            }
+            final String actual = record.string(key);
+            if (!String.valueOf(expected).equals(actual) && !sameNumber(String.valueOf(expected), actual)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameNumber(String expected, String actual) {
+        try {
+            return actual != null && new BigDecimal(expected.trim()).compareTo(new BigDecimal(actual.trim())) == 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private void complete(Json entry, Json response) {
+        store.update(entry.string("_id"), entry.set("status", DONE).set("response", response));
+    }
+
+    private static long toLong(String value) {
+        try {
+            return value != null ? Long.parseLong(value) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return counters of the keys
+     */
+    Json stats() {
+        return Json.map()
+                .set("replays", replays.get())
+                .set("foundByLookup", foundByLookup.get())
+                .set("inProgress", inProgress.get())
+                .set("reclaimed", reclaimed.get())
+                .set("unknownOutcome", unknownOutcome.get());
+    }
+}
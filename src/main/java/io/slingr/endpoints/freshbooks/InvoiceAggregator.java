@@ -0,0 +1,285 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>Aggregates the invoices received from the list method, without keeping them
+ *
+ * <p>The invoices are grouped by client, status, currency and/or month of the invoice date and
+ * each group counts the invoices and keeps the sum, minimum and maximum of the amount and the
+ * paid amount. The amounts are added as decimals and returned as strings, so no precision is
+ * lost. The invoices can be added from several threads.
+ */
+class InvoiceAggregator {
+    private static final String SEPARATOR = "\u0000";
+
+    /**
+     * Fields of the invoices read by the aggregation
+     */
+    static final FieldProjection PROJECTION = FieldProjection.parse(Json.list()
+            .push("invoices.invoice.client_id")
+            .push("invoices.invoice.organization")
+            .push("invoices.invoice.status")
+            .push("invoices.invoice.currency_code")
+            .push("invoices.invoice.date")
+            .push("invoices.invoice.amount")
+            .push("invoices.invoice.paid"));
+
+    private final List<GroupBy> groupBy;
+    private final Map<String, Group> groups = new TreeMap<>();
+    private long invoices;
+
+    /**
+     * @param groupBy fields used to group the invoices, when it is empty there is a single group
+     */
+    InvoiceAggregator(List<GroupBy> groupBy) {
+        this.groupBy = groupBy;
+    }
+
+    /**
+     * Parses the 'groupBy' parameter
+     *
+     * @param value list of groups or a string with groups separated by commas, can be null
+     * @return groups in the given order, without repetitions
+     * @throws EndpointException exception if a group is not valid
+     */
+    static List<GroupBy> parseGroupBy(Object value) throws EndpointException {
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        final List<String> names = new ArrayList<>();
+        if (value instanceof Json && ((Json) value).isList()) {
+            value = ((Json) value).toList();
+        }
+        if (value instanceof List) {
+            for (Object name : (List<?>) value) {
+                if (name != null) {
+                    names.add(name.toString());
+                }
+            }
+        } else if (value instanceof String) {
+            Collections.addAll(names, ((String) value).split(","));
+        } else {
+            throw EndpointException.permanent(ErrorCode.ARGUMENT, String.format("Invalid group by [%s], a list is expected", value));
+        }
+
+        final List<GroupBy> groups = new ArrayList<>();
+        for (String name : names) {
+            if (name.trim().isEmpty()) {
+                continue;
+            }
+            final GroupBy group = GroupBy.of(name.trim());
+            if (group == null) {
+                throw EndpointException.permanent(ErrorCode.ARGUMENT, String.format("Invalid group by [%s], valid values are client, status, currency and month", name));
+            }
+            if (!groups.contains(group)) {
+                groups.add(group);
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Adds an invoice to its group
+     *
+     * @param invoice invoice as it is returned by the list method
+     */
+    synchronized void add(Json invoice) {
+        final StringBuilder key = new StringBuilder();
+        for (GroupBy group : groupBy) {
+            key.append(group.value(invoice)).append(SEPARATOR);
+        }
+        Group group = groups.get(key.toString());
+        if (group == null) {
+            group = new Group(invoice);
+            groups.put(key.toString(), group);
+        }
+        group.add(invoice);
+        invoices++;
+    }
+
+    /**
+     * @return empty aggregation with the same groups, to be merged into this one
+     */
+    InvoiceAggregator partial() {
+        return new InvoiceAggregator(groupBy);
+    }
+
+    /**
+     * Adds the groups of another aggregation, which must not be used afterwards
+     *
+     * @param other aggregation with the same groups
+     */
+    void merge(InvoiceAggregator other) {
+        synchronized (other) {
+            synchronized (this) {
+                for (Map.Entry<String, Group> entry : other.groups.entrySet()) {
+                    final Group group = groups.get(entry.getKey());
+                    if (group == null) {
+                        groups.put(entry.getKey(), entry.getValue());
+                    } else {
+                        group.merge(entry.getValue());
+                    }
+                }
+                invoices += other.invoices;
+            }
+        }
+    }
+
+    /**
+     * @return groups sorted by their values and the number of invoices aggregated
+     */
+    synchronized Json result() {
+        final Json list = Json.list();
+        for (Group group : groups.values()) {
+            list.push(group.toJson());
+        }
+        final Json names = Json.list();
+        for (GroupBy group : groupBy) {
+            names.push(group.name);
+        }
+        return Json.map()
+                .set("groupBy", names)
+                .set("invoices", invoices)
+                .set("groups", list);
+    }
+
+    private static BigDecimal decimal(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return new BigDecimal(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Fields that can be used to group the invoices
+     */
+    enum GroupBy {
+        CLIENT("client", "client_id", "client_id"),
+        STATUS("status", "status", "status"),
+        CURRENCY("currency", "currency_code", "currency_code"),
+        MONTH("month", "date", "month");
+
+        private final String name;
+        private final String field;
+        private final String key;
+
+        /**
+         * @param name name used on the 'groupBy' parameter
+         * @param field field of the invoice
+         * @param key name of the value in the result
+         */
+        GroupBy(String name, String field, String key) {
+            this.name = name;
+            this.field = field;
+            this.key = key;
+        }
+
+        String value(Json invoice) {
+            final String value = invoice.string(field);
+            if (value == null) {
+                return "";
+            }
+            // dates are 'yyyy-MM-dd HH:mm:ss'
+            return this == MONTH && value.length() >= 7 ? value.substring(0, 7) : value.trim();
+        }
+
+        static GroupBy of(String name) {
+            for (GroupBy group : values()) {
+                if (group.name.equalsIgnoreCase(name)) {
+                    return group;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Counters of one group
+     */
+    private class Group {
+        private final Json values = Json.map();
+        private final Stats amount = new Stats();
+        private final Stats paid = new Stats();
+        private long count;
+
+        private Group(Json invoice) {
+            for (GroupBy group : groupBy) {
+                values.set(group.key, group.value(invoice));
+                if (group == GroupBy.CLIENT) {
+                    values.setIfNotNull("organization", invoice.string("organization"));
+                }
+            }
+        }
+
+        private void add(Json invoice) {
+            count++;
+            amount.add(decimal(invoice.string("amount")));
+            paid.add(decimal(invoice.string("paid")));
+        }
+
+        private void merge(Group other) {
+            count += other.count;
+            amount.merge(other.amount);
+            paid.merge(other.paid);
+        }
+
+        private Json toJson() {
+            final Json json = Json.map().merge(values)
+                    .set("count", count)
+                    .set("amount", amount.toJson())
+                    .set("paid", paid.toJson());
+            if (amount.sum != null) {
+                json.set("outstanding", amount.sum.subtract(paid.sum != null ? paid.sum : BigDecimal.ZERO).toPlainString());
+            }
+            return json;
+        }
+    }
+
+    /**
+     * Sum, minimum and maximum of a decimal field
+     */
+    private static class Stats {
+        private BigDecimal sum;
+        private BigDecimal min;
+        private BigDecimal max;
+
+        private void add(BigDecimal value) {
+            if (value == null) {
+                return;
+            }
+            sum = sum == null ? value : sum.add(value);
+            min = min == null || value.compareTo(min) < 0 ? value : min;
+            max = max == null || value.compareTo(max) > 0 ? value : max;
+        }
+
+        private void merge(Stats other) {
+            if (other.sum == null) {
+                return;
+            }
+            sum = sum == null ? other.sum : sum.add(other.sum);
+            min = min == null || other.min.compareTo(min) < 0 ? other.min : min;
+            max = max == null || other.max.compareTo(max) > 0 ? other.max : max;
+        }
+
+        private Json toJson() {
+            return Json.map()
+                    .setIfNotNull("sum", sum != null ? sum.toPlainString() : null)
+                    .setIfNotNull("min", min != null ? min.toPlainString() : null)
+                    .setIfNotNull("max", max != null ? max.toPlainString() : null);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package io.slingr.endpoints.freshbooks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Lock-free histogram of latencies with fixed buckets
+ *
+ * <p>Recording a value only increments two counters. The percentiles are estimated from the
+ * buckets, interpolating inside the bucket that contains the percentile.
+ */
+class LatencyHistogram {
+    /**
+     * Upper bounds of the buckets in milliseconds, there is an extra bucket for larger values
+     */
+    static final long[] BUCKETS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000};
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS.length + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    /**
+     * Records a latency
+     *
+     * @param nanos latency in nanoseconds
+     */
+    void record(long nanos) {
+        final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < BUCKETS.length && millis > BUCKETS[bucket]) {
+            bucket++;
+        }
+        counts.incrementAndGet(bucket);
+        count.increment();
+        sumNanos.add(nanos);
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    double sumSeconds() {
+        return sumNanos.sum() / 1e9;
+    }
+
+    /**
+     * @return copy of the counters of each bucket, the last one is the overflow bucket
+     */
+    long[] bucketCounts() {
+        final long[] copy = new long[counts.length()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+        }
+        return copy;
+    }
+
+    /**
+     * Estimates a percentile
+     *
+     * @param percentile percentile between 0 and 1
+     * @return latency in milliseconds, zero when there are no values
+     */
+    double percentile(double percentile) {
+        return percentile(bucketCounts(), percentile);
+    }
+
+    /**
+     * Estimates a percentile from the counters of the buckets
+     *
+     * @param snapshot counters of each bucket, as returned by {@link #bucketCounts()}
+     * @param percentile percentile between 0 and 1
+     * @return latency in milliseconds, zero when there are no values
+     */
+    static double percentile(long[] snapshot, double percentile) {
+        long total = 0;
+        for (long bucketCount : snapshot) {
+            total += bucketCount;
+        }
+        if (total == 0) {
+            return 0d;
+        }
+
+        final double rank = percentile * total;
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            if (snapshot[i] > 0 && seen + snapshot[i] >= rank) {
+                final double lower = i == 0 ? 0 : BUCKETS[i - 1];
+                if (i == BUCKETS.length) {
+                    return lower;
+                }
+                final double fraction = (rank - seen) / snapshot[i];
+                return lower + (BUCKETS[i] - lower) * fraction;
+            }
+            seen += snapshot[i];
+        }
+        return BUCKETS[BUCKETS.length - 1];
+    }
+}
@@ -0,0 +1,168 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * <p>Walks all the pages of a Freshbooks list method
+ *
+ * <p>The first page is requested to know the number of pages, the remaining ones are fetched
+ * in parallel by a limited number of workers. The items are merged in page order, unless the
+ * pages are streamed, where the items are handed to a callback by the page fetcher and the
+ * responses are dropped.
+ */
+class ListPager {
+    static final int MAX_PER_PAGE = 100;
+
+    private final ExecutorService executor;
+    private final int concurrency;
+
+    ListPager(ExecutorService executor, int concurrency) {
+        this.executor = executor;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * Fetches all the pages and merges the items in one response
+     *
+     * @param collection name of the element that contains the items (e.g. 'invoices')
+     * @param item name of the item element (e.g. 'invoice')
+     * @param pageFetcher function that executes the request for the given page number
+     * @return copy of the first response, where the collection contains the items of all the pages
+     * @throws EndpointException exception if any of the pages fails
+     */
+    Json fetchAll(String collection, String item, IntFunction<Json> pageFetcher) throws EndpointException {
+        final Json first = pageFetcher.apply(1);
+        final Json firstList = listElement(first, collection);
+        if (firstList == null) {
+            return first;
+        }
+
+        final int pages = toInt(firstList.string("@pages"), 1);
+        final Json[] responses = new Json[pages];
+        responses[0] = first;
+        fetchRemaining(pages, pageFetcher, responses);
+
+        final Json items = Json.list();
+        for (Json response : responses) {
+            addItems(items, listElement(response, collection), item);
+        }
+
+        // the responses can be shared with other callers, so the merged response is a copy
+        final int total = toInt(firstList.string("@total"), items.size());
+        final Json list = Json.map().merge(firstList)
+                .set("@page", 1)
+                .set("@pages", 1)
+                .set("@per_page", total)
+                .set("@total", total)
+                .set(item, items);
+        return Json.map().merge(first)
+                .set("response", Json.map().merge(first.json("response")).set(collection, list));
+    }
+
+    /**
+     * Fetches all the pages without keeping the responses. The page fetcher is expected to hand
+     * the items to a callback, so at most one page per worker is in memory.
+     *
+     * @param collection name of the element that contains the items (e.g. 'invoices')
+     * @param pageFetcher function that executes the request for the given page number
+     * @return response of the first page
+     * @throws EndpointException exception if any of the pages fails
+     */
+    Json streamAll(String collection, IntFunction<Json> pageFetcher) throws EndpointException {
+        final Json first = pageFetcher.apply(1);
+        final Json firstList = listElement(first, collection);
+        if (firstList != null) {
+            fetchRemaining(toInt(firstList.string("@pages"), 1), pageFetcher, null);
+        }
+        return first;
+    }
+
+    /**
+     * Fetches the pages after the first one in parallel
+     *
+     * @param responses array where the responses are stored by page, null drops them
+     */
+    private void fetchRemaining(int pages, IntFunction<Json> pageFetcher, Json[] responses) throws EndpointException {
+        if (pages <= 1) {
+            return;
+        }
+        final AtomicInteger nextPage = new AtomicInteger(2);
+        final List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < Math.min(concurrency, pages - 1); i++) {
+            workers.add(executor.submit(() -> {
+                int page;
+                while ((page = nextPage.getAndIncrement()) <= pages) {
+                    final Json response = pageFetcher.apply(page);
+                    if (responses != null) {
+                        responses[page - 1] = response;
+                    }
+                }
+            }));
+        }
+        await(workers);
+    }
+
+    private static void await(List<Future<?>> workers) throws EndpointException {
+        try {
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw EndpointException.permanent(ErrorCode.GENERAL, "Interrupted while fetching pages", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof EndpointException) {
+                throw (EndpointException) e.getCause();
+            }
+            throw EndpointException.permanent(ErrorCode.GENERAL, String.format("Error fetching pages [%s]", e.getCause()), e.getCause());
+        } finally {
+            for (Future<?> worker : workers) {
+                worker.cancel(true);
+            }
+        }
+    }
+
+    static Json listElement(Json response, String collection) {
+        if (response == null || !response.contains("response")) {
+            return null;
+        }
+        final Json body = response.json("response");
+        return body.contains(collection) ? body.json(collection) : null;
+    }
+
+    static void addItems(Json items, Json list, String item) {
+        if (list == null || !list.contains(item)) {
+            return;
+        }
+        final Object value = list.object(item);
+        if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                items.push(element);
+            }
+        } else if (value instanceof Map || value instanceof Json) {
+            items.push(value);
+        }
+    }
+
+    static int toInt(String value, int defaultValue) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * <p>Writes all the items of a Freshbooks list method as NDJSON, one item per line
+ *
+ * <p>The pages are fetched in parallel by a limited number of workers and written in page order
+ * by the calling thread. A worker needs a permit to fetch a page and the permit is returned when
+ * the page is written, so the fetchers are never more than the given number of pages ahead of the
+ * writer. The memory used does not depend on the size of the list.
+ */
+class NdjsonExporter {
+    static final int DEFAULT_PAGES_AHEAD = 4;
+
+    private static final byte NEW_LINE = '\n';
+
+    private final ExecutorService executor;
+    private final int concurrency;
+    private final int pagesAhead;
+
+    /**
+     * @param executor executor where the pages are fetched
+     * @param concurrency maximum number of pages fetched at the same time
+     * @param pagesAhead maximum number of pages fetched or being fetched that were not written yet
+     */
+    NdjsonExporter(ExecutorService executor, int concurrency, int pagesAhead) {
+        this.pagesAhead = Math.max(1, pagesAhead);
+        this.executor = executor;
+        this.concurrency = Math.max(1, Math.min(concurrency, this.pagesAhead));
+    }
+
+    /**
+     * Fetches all the pages and writes their items
+     *
+     * @param collection name of the element that contains the items (e.g. 'invoices')
+     * @param item name of the item element (e.g. 'invoice')
+     * @param pageFetcher function that executes the request for the given page number
+     * @param out stream where the lines are written, it is not closed
+     * @param listener receives the progress after each page is written, can be null
+     * @return counters of the export
+     * @throws EndpointException exception if any of the pages fails or the stream cannot be written
+     */
+    Progress export(String collection, String item, IntFunction<Json> pageFetcher, OutputStream out,
+                    ProgressListener listener) throws EndpointException {
+        final Json first = pageFetcher.apply(1);
+        final Json firstList = ListPager.listElement(first, collection);
+        final int pages = firstList != null ? ListPager.toInt(firstList.string("@pages"), 1) : 1;
+        final Progress progress = new Progress(pages, firstList != null ? ListPager.toInt(firstList.string("@total"), -1) : 0);
+        write(firstList, item, out, progress, listener);
+        if (pages <= 1) {
+            return progress;
+        }
+
+        @SuppressWarnings("unchecked")
+        final CompletableFuture<Json>[] responses = new CompletableFuture[pages + 1];
+        for (int page = 2; page <= pages; page++) {
+            responses[page] = new CompletableFuture<>();
+        }
+        final Semaphore permits = new Semaphore(pagesAhead);
+        final AtomicInteger nextPage = new AtomicInteger(2);
+        final List<Future<?>> workers = new ArrayList<>();
+        try {
+            for (int i = 0; i < Math.min(concurrency, pages - 1); i++) {
+                workers.add(executor.submit(() -> fetch(pageFetcher, pages, permits, nextPage, responses)));
+            }
+            for (int page = 2; page <= pages; page++) {
+                final Json response = await(responses[page]);
+                responses[page] = null;
+                write(ListPager.listElement(response, collection), item, out, progress, listener);
+                permits.release();
+            }
+        } finally {
+            for (Future<?> worker : workers) {
+                worker.cancel(true);
+            }
+        }
+        return progress;
+    }
+
+    private static void fetch(IntFunction<Json> pageFetcher, int pages, Semaphore permits, AtomicInteger nextPage,
+                              CompletableFuture<Json>[] responses) {
+        while (true) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                // the export was cancelled
+                return;
+            }
+            // the page is taken after the permit, so the writer always waits for a page that is being fetched
+            final int page = nextPage.getAndIncrement();
+            if (page > pages) {
+                permits.release();
+                return;
+            }
+            try {
+                responses[page].complete(pageFetcher.apply(page));
+            } catch (RuntimeException e) {
+                responses[page].completeExceptionally(e);
+                return;
+            }
+        }
+    }
+
+    private static Json await(CompletableFuture<Json> response) throws EndpointException {
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw EndpointException.permanent(ErrorCode.GENERAL, "Interrupted while exporting pages", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof EndpointException) {
+                throw (EndpointException) e.getCause();
+            }
+            throw EndpointException.permanent(ErrorCode.GENERAL, String.format("Error fetching pages [%s]", e.getCause()), e.getCause());
+        }
+    }
+
+    private static void write(Json list, String item, OutputStream out, Progress progress, ProgressListener listener) throws EndpointException {
+        final Json items = Json.list();
+        ListPager.addItems(items, list, item);
+        try {
+            for (Object element : items.toList()) {
+                final byte[] line = Json.fromObject(element).toString().getBytes(StandardCharsets.UTF_8);
+                out.write(line);
+                out.write(NEW_LINE);
+                progress.items++;
+                progress.bytes += line.length + 1;
+            }
+        } catch (IOException e) {
+            throw EndpointException.permanent(ErrorCode.GENERAL, String.format("Error writing the export [%s]", e.getMessage()), e);
+        }
+        progress.writtenPages++;
+        if (listener != null) {
+            listener.onPage(progress);
+        }
+    }
+
+    /**
+     * Counters of an export, they are only modified by the writer
+     */
+    static class Progress {
+        private final int pages;
+        private final int total;
+        private int writtenPages;
+        private long items;
+        private long bytes;
+
+        private Progress(int pages, int total) {
+            this.pages = pages;
+            this.total = total;
+        }
+
+        int writtenPages() {
+            return writtenPages;
+        }
+
+        long items() {
+            return items;
+        }
+
+        /**
+         * @return bytes of the lines before any compression
+         */
+        long bytes() {
+            return bytes;
+        }
+
+        Json toJson() {
+            return Json.map()
+                    .set("pages", pages)
+                    .set("writtenPages", writtenPages)
+                    .setIfNotNull("total", total >= 0 ? total : null)
+                    .set("items", items)
+                    .set("bytes", bytes);
+        }
+    }
+
+    /**
+     * Receives the progress of the export, it is called by the writer thread
+     */
+    interface ProgressListener {
+        void onPage(Progress progress);
+    }
+}
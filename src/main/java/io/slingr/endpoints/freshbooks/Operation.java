@@ -0,0 +1,183 @@
+package io.slingr.endpoints.freshbooks;
+
+/**
+ * <p>Registry of the Freshbooks methods executed by the endpoint functions
+ *
+ * <p>Each operation knows the entity it works with, how the parameters are wrapped and the
+ * messages of the logs. The XML envelope is built once per operation, so the requests only
+ * serialize the parameters.
+ */
+enum Operation {
+    CLIENT_CREATE("client.create", Entity.CLIENT, Kind.CREATE, "Create client", "Client created"),
+    CLIENT_UPDATE("client.update", Entity.CLIENT, Kind.UPDATE, "Update client", "Client updated"),
+    CLIENT_DELETE("client.delete", Entity.CLIENT, Kind.DELETE, "Remove client", "Client removed"),
+    CLIENT_GET("client.get", Entity.CLIENT, Kind.GET, "Find client by id", "Found client"),
+    CLIENT_LIST("client.list", Entity.CLIENT, Kind.LIST, "Find clients", "Found clients"),
+
+    INVOICE_CREATE("invoice.create", Entity.INVOICE, Kind.CREATE, "Create invoice", "Invoice created"),
+    INVOICE_UPDATE("invoice.update", Entity.INVOICE, Kind.UPDATE, "Update invoice", "Invoice updated"),
+    INVOICE_DELETE("invoice.delete", Entity.INVOICE, Kind.DELETE, "Remove invoice", "Invoice removed"),
+    INVOICE_GET("invoice.get", Entity.INVOICE, Kind.GET, "Find invoice by id", "Found invoice"),
+    INVOICE_LIST("invoice.list", Entity.INVOICE, Kind.LIST, "Find invoices", "Found invoices"),
+
+    RECURRING_CREATE("recurring.create", Entity.RECURRING, Kind.CREATE, "Create recurring profile", "Recurring profile created"),
+    RECURRING_UPDATE("recurring.update", Entity.RECURRING, Kind.UPDATE, "Update recurring profile", "Recurring profile updated"),
+    RECURRING_DELETE("recurring.delete", Entity.RECURRING, Kind.DELETE, "Remove recurring profile", "Recurring profile removed"),
+    RECURRING_GET("recurring.get", Entity.RECURRING, Kind.GET, "Find recurring profile by id", "Found recurring profile"),
+    RECURRING_LIST("recurring.list", Entity.RECURRING, Kind.LIST, "Find recurring profiles", "Found recurring profiles"),
+
+    CURRENCY_LIST("currency.list", Entity.CURRENCY, Kind.LIST, "Find currencies", "Found currencies");
+
+    private final String method;
+    private final Entity entity;
+    private final Kind kind;
+    private final String iniLogMessage;
+    private final String endLogMessage;
+    private final XmlRequestWriter.Envelope envelope;
+
+    Operation(String method, Entity entity, Kind kind, String iniLogMessage, String endLogMessage) {
+        this.method = method;
+        this.entity = entity;
+        this.kind = kind;
+        this.iniLogMessage = iniLogMessage;
+        this.endLogMessage = endLogMessage;
+        this.envelope = XmlRequestWriter.Envelope.of(method, kind.wrapped ? entity.item : null);
+    }
+
+    /**
+     * @return name of the freshbooks method
+     */
+    String method() {
+        return method;
+    }
+
+    Entity entity() {
+        return entity;
+    }
+
+    Kind kind() {
+        return kind;
+    }
+
+    String iniLogMessage() {
+        return iniLogMessage;
+    }
+
+    String endLogMessage() {
+        return endLogMessage;
+    }
+
+    /**
+     * @return prebuilt XML envelope, including the element where the parameters are wrapped
+     */
+    XmlRequestWriter.Envelope envelope() {
+        return envelope;
+    }
+
+    /**
+     * @return true if the method only reads data, so identical calls can be shared or repeated
+     */
+    boolean isRead() {
+        return kind.read;
+    }
+
+    /**
+     * @return true if a second identical call can be sent when the first one is slow. Only the
+     * reads of one record and the list of currencies, which are short and idempotent.
+     */
+    boolean isHedgeable() {
+        return kind == Kind.GET || this == CURRENCY_LIST;
+    }
+
+    boolean isList() {
+        return kind == Kind.LIST;
+    }
+
+    /**
+     * @return true if the method modifies the entity referenced by the id of the request
+     */
+    boolean invalidatesEntity() {
+        return kind.invalidates;
+    }
+
+    /**
+     * @return operation of the given kind over the entity, or null if it is not registered
+     */
+    static Operation of(Entity entity, Kind kind) {
+        for (Operation operation : values()) {
+            if (operation.entity == entity && operation.kind == kind) {
+                return operation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Entities of Freshbooks and the names of their elements
+     */
+    enum Entity {
+        CLIENT("client", "clients", "client_id", "email"),
+        INVOICE("invoice", "invoices", "invoice_id", "number"),
+        RECURRING("recurring", "recurrings", "recurring_id", null),
+        CURRENCY("currency", "currencies", "code", null);
+
+        private final String item;
+        private final String collection;
+        private final String idField;
+        private final String naturalKey;
+
+        Entity(String item, String collection, String idField, String naturalKey) {
+            this.item = item;
+            this.collection = collection;
+            this.idField = idField;
+            this.naturalKey = naturalKey;
+        }
+
+        /**
+         * @return name of the element of one entity (e.g. 'invoice')
+         */
+        String item() {
+            return item;
+        }
+
+        /**
+         * @return name of the list element (e.g. 'invoices')
+         */
+        String collection() {
+            return collection;
+        }
+
+        String idField() {
+            return idField;
+        }
+
+        /**
+         * @return field that can be used as filter of the list method to find a record created
+         * before, or null if there is not one
+         */
+        String naturalKey() {
+            return naturalKey;
+        }
+    }
+
+    /**
+     * Kinds of methods
+     */
+    enum Kind {
+        CREATE(true, false, false),
+        UPDATE(true, false, true),
+        DELETE(false, false, true),
+        GET(false, true, false),
+        LIST(false, true, false);
+
+        private final boolean wrapped;
+        private final boolean read;
+        private final boolean invalidates;
+
+        Kind(boolean wrapped, boolean read, boolean invalidates) {
+            this.wrapped = wrapped;
+            this.read = read;
+            this.invalidates = invalidates;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.utils.Json;
+import org.slf4j.Logger;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Logs the calls to Freshbooks
+ *
+ * <p>Modes:
+ * <ul>
+ *     <li>off: nothing is logged</li>
+ *     <li>summary: one line per call with the method, status, latency and size of the response</li>
+ *     <li>full: request and response payloads, truncated to a maximum length and only for a
+ *     sample of the calls</li>
+ * </ul>
+ *
+ * <p>The payloads are only rendered when they are going to be written.
+ */
+class PayloadLogger {
+    private static final String NO_SIZE = "-";
+    private static final String TRUNCATED = "... (truncated)";
+
+    enum Mode {
+        OFF, SUMMARY, FULL;
+
+        static Mode parse(String value, Mode defaultMode) {
+            if (value == null || value.trim().isEmpty()) {
+                return defaultMode;
+            }
+            try {
+                return Mode.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return defaultMode;
+            }
+        }
+    }
+
+    private final Logger logger;
+    private final Mode mode;
+    private final int maxLength;
+    private final int sampling;
+    private final AtomicLong calls = new AtomicLong();
+
+    /**
+     * @param logger logger where the messages are written
+     * @param mode logging mode
+     * @param maxLength maximum length of the payloads in full mode, zero means no limit
+     * @param sampling in full mode only one of each 'sampling' calls logs the payloads
+     */
+    PayloadLogger(Logger logger, Mode mode, int maxLength, int sampling) {
+        this.logger = logger;
+        this.mode = mode;
+        this.maxLength = Math.max(0, maxLength);
+        this.sampling = Math.max(1, sampling);
+    }
+
+    /**
+     * Starts a logged call
+     *
+     * @param method name of the freshbooks method
+     * @return call used to log the request and the response
+     */
+    Call start(String method) {
+        final boolean full = mode == Mode.FULL && (sampling == 1 || calls.getAndIncrement() % sampling == 0);
+        return new Call(method, full);
+    }
+
+    /**
+     * Renders the payload as JSON up to the maximum length. The rendering stops once the maximum
+     * is reached, so a large response is not rendered completely to log its beginning.
+     */
+    String truncate(Object payload) {
+        final BoundedText text = new BoundedText(maxLength);
+        if (payload instanceof Json || payload instanceof Map || payload instanceof List) {
+            render(text, payload);
+        } else {
+            text.append(String.valueOf(payload));
+        }
+        return text.full ? text.builder + TRUNCATED : text.builder.toString();
+    }
+
+    private static void render(BoundedText text, Object value) {
+        if (value instanceof Json) {
+            final Json json = (Json) value;
+            value = json.isList() ? json.toList() : json.toMap();
+        }
+        if (value instanceof Map) {
+            text.append("{");
+            String separator = "";
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (text.full) {
+                    return;
+                }
+                text.append(separator);
+                renderString(text, String.valueOf(entry.getKey()));
+                text.append(":");
+                render(text, entry.getValue());
+                separator = ",";
+            }
+            text.append("}");
+        } else if (value instanceof List) {
+            text.append("[");
+            String separator = "";
+            for (Object element : (List<?>) value) {
+                if (text.full) {
+                    return;
+                }
+                text.append(separator);
+                render(text, element);
+                separator = ",";
+            }
+            text.append("]");
+        } else if (value == null || value instanceof Number || value instanceof Boolean) {
+            text.append(String.valueOf(value));
+        } else {
+            renderString(text, value.toString());
+        }
+    }
+
+    private static void renderString(BoundedText text, String value) {
+        text.append("\"");
+        for (int i = 0; i < value.length() && !text.full; i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                text.append("\\" + c);
+            } else if (c < 0x20) {
+                text.append(String.format("\\u%04x", (int) c));
+            } else {
+                text.append(c);
+            }
+        }
+        text.append("\"");
+    }
+
+    /**
+     * Text that keeps up to a maximum length, zero means no limit
+     */
+    private static class BoundedText {
+        private final StringBuilder builder = new StringBuilder();
+        private final int maxLength;
+        private boolean full;
+
+        private BoundedText(int maxLength) {
+            this.maxLength = maxLength;
+        }
+
+        private void append(String value) {
+            if (full) {
+                return;
+            }
+            if (maxLength > 0 && builder.length() + value.length() > maxLength) {
+                builder.append(value, 0, maxLength - builder.length());
+                full = true;
+            } else {
+                builder.append(value);
+            }
+        }
+
+        private void append(char c) {
+            if (full) {
+                return;
+            }
+            if (maxLength > 0 && builder.length() >= maxLength) {
+                full = true;
+            } else {
+                builder.append(c);
+            }
+        }
+    }
+
+    class Call {
+        private final String method;
+        private final boolean full;
+        private final long start = System.nanoTime();
+        private long bytes = -1;
+
+        private Call(String method, boolean full) {
+            this.method = method;
+            this.full = full;
+        }
+
+        /**
+         * @return true if the payloads of this call are logged
+         */
+        boolean isFull() {
+            return full && logger.isInfoEnabled();
+        }
+
+        void request(String message, Object payload) {
+            if (isFull()) {
+                logger.info(String.format("%s [%s]", message, truncate(payload)));
+            }
+        }
+
+        /**
+         * Sets the size of the response, when it is known
+         */
+        void bytes(long bytes) {
+            this.bytes = bytes;
+        }
+
+        void response(String message, String status, Object payload) {
+            if (mode == Mode.OFF || !logger.isInfoEnabled()) {
+                return;
+            }
+            final long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            final Object size = bytes >= 0 ? bytes : NO_SIZE;
+            if (isFull()) {
+                logger.info(String.format("%s [method=%s status=%s latency=%sms bytes=%s] [%s]", message, method, status, latency, size, truncate(payload)));
+            } else {
+                logger.info(String.format("%s [method=%s status=%s latency=%sms bytes=%s]", message, method, status, latency, size));
+            }
+        }
+
+        void failure(String message, Exception exception) {
+            if (mode == Mode.OFF || !logger.isInfoEnabled()) {
+                return;
+            }
+            final long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            logger.info(String.format("%s [method=%s status=error latency=%sms error=%s]", message, method, latency, exception.getMessage()));
+        }
+    }
+}
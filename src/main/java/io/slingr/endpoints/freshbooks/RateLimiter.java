@@ -0,0 +1,167 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>Token bucket that paces the requests sent to Freshbooks
+ *
+ * <p>The rate is halved when Freshbooks throttles the requests or fails with a server error, and
+ * it grows back linearly to the configured rate while the requests succeed.
+ */
+class RateLimiter {
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long DECREASE_COOL_DOWN = TimeUnit.SECONDS.toNanos(1);
+    private static final double RECOVERY_SECONDS = 30d;
+    private static final double MIN_RATE_FACTOR = 0.1d;
+
+    private final double maxRate;
+    private final double minRate;
+    private final double burst;
+    private final LongSupplier clock;
+
+    private double rate;
+    private double tokens;
+    private long lastRefill;
+    private long lastDecrease;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong delayedRequests = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong throttles = new AtomicLong();
+
+    /**
+     * @param ratePerSecond maximum number of requests per second, zero disables the limiter
+     * @param burst number of requests that can be sent at once after an idle period
+     */
+    RateLimiter(double ratePerSecond, int burst) {
+        this(ratePerSecond, burst, System::nanoTime);
+    }
+
+    RateLimiter(double ratePerSecond, int burst, LongSupplier clock) {
+        this.maxRate = Math.max(0d, ratePerSecond);
+        this.minRate = this.maxRate * MIN_RATE_FACTOR;
+        this.burst = Math.max(1, burst);
+        this.clock = clock;
+        this.rate = this.maxRate;
+        this.tokens = this.burst;
+        this.lastRefill = clock.getAsLong();
+        this.lastDecrease = this.lastRefill - DECREASE_COOL_DOWN;
+    }
+
+    boolean isEnabled() {
+        return maxRate > 0;
+    }
+
+    /**
+     * Waits until a request can be sent
+     *
+     * @throws EndpointException exception if the thread is interrupted while waiting
+     */
+    void acquire() throws EndpointException {
+        if (!isEnabled()) {
+            return;
+        }
+        requests.incrementAndGet();
+
+        final long wait = reserve();
+        if (wait <= 0) {
+            return;
+        }
+
+        delayedRequests.incrementAndGet();
+        waitNanos.addAndGet(wait);
+        maxWaitNanos.accumulateAndGet(wait, Math::max);
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw EndpointException.permanent(ErrorCode.GENERAL, "Interrupted while waiting for the rate limiter", e);
+        }
+    }
+
+    /**
+     * Takes a token, the bucket can go negative and in that case the caller has to wait until
+     * the tokens are refilled
+     *
+     * @return nanoseconds to wait before sending the request
+     */
+    synchronized long reserve() {
+        refill();
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) (-tokens / rate * NANOS_PER_SECOND);
+    }
+
+    /**
+     * Reduces the rate after Freshbooks throttled a request or failed with a server error
+     */
+    synchronized void onThrottled() {
+        if (!isEnabled()) {
+            return;
+        }
+        throttles.incrementAndGet();
+        refill();
+        final long now = clock.getAsLong();
+        if (now - lastDecrease >= DECREASE_COOL_DOWN) {
+            rate = Math.max(minRate, rate / 2);
+            lastDecrease = now;
+        }
+    }
+
+    private void refill() {
+        final long now = clock.getAsLong();
+        final double elapsed = (double) (now - lastRefill) / NANOS_PER_SECOND;
+        if (elapsed <= 0) {
+            return;
+        }
+        lastRefill = now;
+        tokens = Math.min(burst, tokens + elapsed * rate);
+        if (rate < maxRate) {
+            rate = Math.min(maxRate, rate + elapsed * maxRate / RECOVERY_SECONDS);
+        }
+    }
+
+    synchronized double currentRate() {
+        return rate;
+    }
+
+    double waitSeconds() {
+        return waitNanos.get() / 1e9;
+    }
+
+    long delayedRequests() {
+        return delayedRequests.get();
+    }
+
+    /**
+     * @return counters of the limiter, the wait times are in milliseconds
+     */
+    Json stats() {
+        final long count = requests.get();
+        return Json.map()
+                .set("enabled", isEnabled())
+                .set("maxRate", maxRate)
+                .set("currentRate", currentRate())
+                .set("burst", burst)
+                .set("requests", count)
+                .set("delayedRequests", delayedRequests.get())
+                .set("throttled", throttles.get())
+                .set("totalWait", TimeUnit.NANOSECONDS.toMillis(waitNanos.get()))
+                .set("averageWait", count > 0 ? (double) waitNanos.get() / count / 1000000d : 0d)
+                .set("maxWait", TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
+    }
+
+    /**
+     * @param statusCode http status code of a failed request
+     * @return true if the status code means that Freshbooks is throttling or degraded
+     */
+    static boolean isThrottling(int statusCode) {
+        return statusCode == 429 || statusCode >= 500;
+    }
+}
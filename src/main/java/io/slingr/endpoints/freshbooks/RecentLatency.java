@@ -0,0 +1,86 @@
+package io.slingr.endpoints.freshbooks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>Latencies of the last minutes of a method, the older ones are discarded
+ *
+ * <p>The values are recorded on the histogram of the current window. When the window ends it
+ * becomes the previous one and the older window is dropped, so the percentiles cover between
+ * one and two windows and follow the changes of the latency of Freshbooks.
+ */
+class RecentLatency {
+    static final long DEFAULT_WINDOW = TimeUnit.MINUTES.toMillis(1);
+
+    private final long windowMillis;
+    private final LongSupplier clock;
+
+    private volatile LatencyHistogram current = new LatencyHistogram();
+    private volatile LatencyHistogram previous = new LatencyHistogram();
+    private volatile long windowStart;
+
+    RecentLatency() {
+        this(DEFAULT_WINDOW, System::currentTimeMillis);
+    }
+
+    /**
+     * @param windowMillis length of a window
+     * @param clock source of the current time in milliseconds
+     */
+    RecentLatency(long windowMillis, LongSupplier clock) {
+        this.windowMillis = Math.max(1, windowMillis);
+        this.clock = clock;
+        this.windowStart = clock.getAsLong();
+    }
+
+    /**
+     * Records a latency
+     *
+     * @param nanos latency in nanoseconds
+     */
+    void record(long nanos) {
+        rotate();
+        current.record(nanos);
+    }
+
+    /**
+     * @return number of latencies of the current and the previous windows
+     */
+    long count() {
+        rotate();
+        return previous.count() + current.count();
+    }
+
+    /**
+     * Estimates a percentile of the current and the previous windows
+     *
+     * @param percentile percentile between 0 and 1
+     * @return latency in milliseconds, zero when there are no values
+     */
+    double percentile(double percentile) {
+        rotate();
+        final long[] counts = previous.bucketCounts();
+        final long[] recent = current.bucketCounts();
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += recent[i];
+        }
+        return LatencyHistogram.percentile(counts, percentile);
+    }
+
+    private void rotate() {
+        final long now = clock.getAsLong();
+        if (now - windowStart < windowMillis) {
+            return;
+        }
+        synchronized (this) {
+            final long elapsed = now - windowStart;
+            if (elapsed >= windowMillis) {
+                // after a whole window without values the previous one is stale too
+                previous = elapsed >= 2 * windowMillis ? new LatencyHistogram() : current;
+                current = new LatencyHistogram();
+                windowStart = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.utils.Json;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <p>Endpoint options sent by the app together with the Freshbooks parameters
+ *
+ * <p>The options are removed from the body before sending the request to Freshbooks.
+ */
+class RequestOptions {
+    static final String SKIP_CACHE = "skipCache";
+    static final String IDEMPOTENCY_KEY = "idempotencyKey";
+    static final String FIELDS = "fields";
+    static final String ACCOUNT = "account";
+
+    private static final Set<String> OPTIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            SKIP_CACHE,
+            IDEMPOTENCY_KEY,
+            FIELDS,
+            ACCOUNT
+    )));
+
+    private final Json body;
+    private final Json options;
+
+    private RequestOptions(Json body, Json options) {
+        this.body = body;
+        this.options = options;
+    }
+
+    /**
+     * Splits the endpoint options from the Freshbooks parameters
+     *
+     * @param request request received by the function, can be null
+     * @return parsed options
+     */
+    static RequestOptions parse(Json request) {
+        if (request == null || request.isList()) {
+            return new RequestOptions(request, Json.map());
+        }
+
+        boolean found = false;
+        for (String key : request.keys()) {
+            if (OPTIONS.contains(key)) {
+                found = true;
+                break;
+            }
+        }
+        if (!found) {
+            return new RequestOptions(request, Json.map());
+        }
+
+        final Json body = Json.map();
+        final Json options = Json.map();
+        for (String key : request.keys()) {
+            if (OPTIONS.contains(key)) {
+                options.set(key, request.object(key));
+            } else {
+                body.set(key, request.object(key));
+            }
+        }
+        return new RequestOptions(body, options);
+    }
+
+    /**
+     * @return Freshbooks parameters, without the endpoint options
+     */
+    Json body() {
+        return body;
+    }
+
+    boolean skipCache() {
+        return flag(SKIP_CACHE);
+    }
+
+    /**
+     * @return key sent by the app to execute a create only once, or null
+     */
+    String idempotencyKey() {
+        final Object value = options.object(IDEMPOTENCY_KEY);
+        return value != null && !value.toString().trim().isEmpty() ? value.toString().trim() : null;
+    }
+
+    /**
+     * @return fields of the response selected by the app, or null to return all of them
+     */
+    FieldProjection fields() {
+        return FieldProjection.parse(options.object(FIELDS));
+    }
+
+    /**
+     * @return name of the Freshbooks account where the call is executed, or null for the default one
+     */
+    String account() {
+        final Object value = options.object(ACCOUNT);
+        return value != null && !value.toString().trim().isEmpty() ? value.toString().trim() : null;
+    }
+
+    private boolean flag(String option) {
+        final Object value = options.object(option);
+        return value instanceof Boolean ? (Boolean) value : value != null && Boolean.parseBoolean(value.toString());
+    }
+}
@@ -0,0 +1,78 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.utils.Json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>Compresses the results of the functions that are larger than a threshold
+ *
+ * <p>The compressed result replaces the original one with
+ * '{"compressed": true, "encoding": "gzip", "size": n, "data": "base64"}', where the data is the
+ * JSON of the result compressed with gzip and the size is its length before the compression.
+ */
+class ResultCompressor {
+    static final int DEFAULT_THRESHOLD = 0;
+    static final String ENCODING = "gzip";
+
+    private final int threshold;
+
+    private final AtomicLong compressed = new AtomicLong();
+    private final AtomicLong savedBytes = new AtomicLong();
+
+    /**
+     * @param threshold minimum size in bytes of the results that are compressed, zero disables
+     *                  the compression
+     */
+    ResultCompressor(int threshold) {
+        this.threshold = Math.max(0, threshold);
+    }
+
+    /**
+     * @param result result of the function, can be null
+     * @return compressed result when it is larger than the threshold, otherwise the same result
+     */
+    Json compress(Json result) {
+        if (threshold == 0 || result == null) {
+            return result;
+        }
+        final byte[] json = result.toString().getBytes(StandardCharsets.UTF_8);
+        if (json.length < threshold) {
+            return result;
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(json);
+        } catch (IOException e) {
+            // not possible writing in memory
+            return result;
+        }
+        final String data = Base64.getEncoder().encodeToString(out.toByteArray());
+        if (data.length() >= json.length) {
+            return result;
+        }
+        compressed.incrementAndGet();
+        savedBytes.addAndGet(json.length - data.length());
+        return Json.map()
+                .set("compressed", true)
+                .set("encoding", ENCODING)
+                .set("size", json.length)
+                .set("data", data);
+    }
+
+    long compressed() {
+        return compressed.get();
+    }
+
+    /**
+     * @return bytes saved by the compressed results, after the base64 encoding
+     */
+    long savedBytes() {
+        return savedBytes.get();
+    }
+}
@@ -0,0 +1,157 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * <p>Repeats the calls that fail with a transient error
+ *
+ * <p>The delay between attempts grows exponentially and is fully jittered, so the callers that
+ * failed at the same time do not retry at the same time. The retries are limited by a budget:
+ * each call adds a fraction of a token and each retry takes a whole one, so when Freshbooks is
+ * down the retries do not multiply the load.
+ */
+class Retrier {
+    static final int DEFAULT_MAX_ATTEMPTS = 3;
+    static final int DEFAULT_BASE_DELAY = 200;
+    static final int DEFAULT_BUDGET_PERCENT = 10;
+
+    private static final long MAX_DELAY = 5000;
+    private static final double MAX_TOKENS = 10d;
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final double tokensPerCall;
+    private final Sleeper sleeper;
+    private final DoubleSupplier random;
+
+    private double tokens = MAX_TOKENS;
+
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong recovered = new AtomicLong();
+    private final AtomicLong budgetExhausted = new AtomicLong();
+
+    /**
+     * @param maxAttempts maximum number of attempts of a call, including the first one
+     * @param baseDelayMillis delay before the first retry, it is doubled on each retry
+     * @param budgetPercent retries allowed per 100 calls, once the initial tokens are spent
+     */
+    Retrier(int maxAttempts, long baseDelayMillis, int budgetPercent) {
+        this(maxAttempts, baseDelayMillis, budgetPercent, Thread::sleep, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    Retrier(int maxAttempts, long baseDelayMillis, int budgetPercent, Sleeper sleeper, DoubleSupplier random) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMillis = Math.max(0, baseDelayMillis);
+        this.tokensPerCall = Math.max(0, budgetPercent) / 100d;
+        this.sleeper = sleeper;
+        this.random = random;
+    }
+
+    /**
+     * Executes the call, repeating it while it fails with a transient error
+     *
+     * @param call call to execute
+     * @param beforeRetry check executed before each retry, when it returns a response the call is
+     *                    not repeated and that response is returned. Can be null.
+     * @return response of the call
+     * @throws EndpointException exception of the last attempt
+     */
+    Json execute(Supplier<Json> call, Supplier<Json> beforeRetry) throws EndpointException {
+        deposit();
+        int attempt = 1;
+        while (true) {
+            try {
+                final Json response = call.get();
+                if (attempt > 1) {
+                    recovered.incrementAndGet();
+                }
+                return response;
+            } catch (EndpointException e) {
+                if (attempt >= maxAttempts || !Failures.isTransient(e) || Failures.isRejected(e)) {
+                    throw e;
+                }
+                if (!withdraw()) {
+                    budgetExhausted.incrementAndGet();
+                    throw e;
+                }
+                sleep(delay(attempt));
+                retries.incrementAndGet();
+                attempt++;
+                if (beforeRetry != null) {
+                    final Json response = beforeRetry.get();
+                    if (response != null) {
+                        recovered.incrementAndGet();
+                        return response;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return random delay between zero and the exponential delay of the attempt
+     */
+    long delay(int attempt) {
+        final long exponential = Math.min(MAX_DELAY, baseDelayMillis << Math.min(attempt - 1, 20));
+        return (long) (random.getAsDouble() * exponential);
+    }
+
+    private void sleep(long millis) {
+        try {
+            sleeper.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw EndpointException.permanent(ErrorCode.GENERAL, "Interrupted while waiting to retry", e);
+        }
+    }
+
+    private synchronized void deposit() {
+        tokens = Math.min(MAX_TOKENS, tokens + tokensPerCall);
+    }
+
+    private synchronized boolean withdraw() {
+        if (tokens < 1d) {
+            return false;
+        }
+        tokens -= 1d;
+        return true;
+    }
+
+    long retries() {
+        return retries.get();
+    }
+
+    long budgetExhausted() {
+        return budgetExhausted.get();
+    }
+
+    /**
+     * @return counters of the retries
+     */
+    Json stats() {
+        final double available;
+        synchronized (this) {
+            available = tokens;
+        }
+        return Json.map()
+                .set("maxAttempts", maxAttempts)
+                .set("retries", retries.get())
+                .set("recovered", recovered.get())
+                .set("budgetExhausted", budgetExhausted.get())
+                .set("budgetTokens", available);
+    }
+
+    /**
+     * Waits before a retry, replaced on the tests
+     */
+    interface Sleeper {
+        void sleep(long millis) throws InterruptedException;
+    }
+}
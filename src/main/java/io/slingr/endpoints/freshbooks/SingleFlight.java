@@ -0,0 +1,113 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * <p>De-duplicates identical calls that are executed at the same time
+ *
+ * <p>The first caller of a key executes the call, the callers that arrive while it is in
+ * flight wait for it and receive the same response (or the same exception). The responses
+ * are shared, so they must not be modified by the callers.
+ */
+class SingleFlight {
+
+    private final Map<String, CompletableFuture<Json>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+
+    /**
+     * Executes the call or joins the identical call that is in flight
+     *
+     * @param key key that identifies identical calls
+     * @param call call to execute
+     * @return response of the call
+     */
+    Json execute(String key, Supplier<Json> call) {
+        final CompletableFuture<Json> future = new CompletableFuture<>();
+        final CompletableFuture<Json> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            shared.incrementAndGet();
+            return join(existing);
+        }
+
+        executed.incrementAndGet();
+        try {
+            final Json response = call.get();
+            future.complete(response);
+            return response;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private static Json join(CompletableFuture<Json> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw EndpointException.permanent(ErrorCode.GENERAL, "Interrupted while waiting for the response", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw EndpointException.permanent(ErrorCode.GENERAL, String.format("Error waiting for the response [%s]", e.getCause()), e.getCause());
+        }
+    }
+
+    long shared() {
+        return shared.get();
+    }
+
+    /**
+     * @return counters of executed and shared calls
+     */
+    Json stats() {
+        return Json.map()
+                .set("executed", executed.get())
+                .set("shared", shared.get())
+                .set("inFlight", inFlight.size());
+    }
+
+    /**
+     * Builds the key of a call from the method and the body. The keys of the maps are sorted, so
+     * the same parameters in a different order generate the same key.
+     *
+     * @param method name of the freshbooks method
+     * @param body body of the request, can be null
+     * @return key of the call
+     */
+    static String key(String method, Json body) {
+        final StringBuilder key = new StringBuilder(method).append(':');
+        CanonicalJson.append(key, body);
+        return key.toString();
+    }
+
+    /**
+     * Builds the key of a call whose response is reduced to some fields, the calls only share
+     * the response when they select the same fields
+     *
+     * @param method name of the freshbooks method
+     * @param body body of the request, can be null
+     * @param projection fields of the response, can be null
+     * @return key of the call
+     */
+    static String key(String method, Json body, FieldProjection projection) {
+        return projection == null ? key(method, body) : key(method, body) + "|" + projection;
+    }
+}
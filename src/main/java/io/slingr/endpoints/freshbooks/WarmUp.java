@@ -0,0 +1,146 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * <p>Steps executed after the endpoint starts so the first calls of the app are not slow
+ *
+ * <p>The endpoint is not ready until all the steps finished. A step that fails is logged and
+ * recorded, but it does not keep the endpoint from being ready: the calls work without the
+ * warm-up, they are only slower.
+ */
+class WarmUp {
+    private static final Logger logger = LoggerFactory.getLogger(WarmUp.class);
+
+    static final int DEFAULT_CONNECTIONS = 2;
+
+    private static final String SAMPLE_RESPONSE = "<?xml version=\"1.0\" encoding=\"utf-8\"?>" +
+            "<response xmlns=\"http://www.freshbooks.com/api/\" status=\"ok\">" +
+            "<currencies page=\"1\" per_page=\"1\" pages=\"1\" total=\"1\">" +
+            "<currency><code>USD</code><symbol>$</symbol></currency>" +
+            "</currencies></response>";
+
+    private final LongSupplier nanoClock;
+    private final long createdAt;
+    private final Map<String, Json> steps = new TreeMap<>();
+    private volatile boolean ready;
+    private volatile long startupNanos;
+    private volatile long warmUpNanos;
+
+    /**
+     * @param nanoClock source of the current time in nanoseconds, the startup is measured from now
+     */
+    WarmUp(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.createdAt = nanoClock.getAsLong();
+    }
+
+    /**
+     * Records the end of the start of the endpoint, before the warm-up steps
+     */
+    void started() {
+        startupNanos = nanoClock.getAsLong() - createdAt;
+    }
+
+    /**
+     * Executes a step, its failures are logged and recorded
+     *
+     * @param name name of the step
+     * @param action action of the step, returns a summary of the result that can be null
+     * @return true if the step succeeded
+     */
+    boolean step(String name, Supplier<Object> action) {
+        final long start = nanoClock.getAsLong();
+        final Json result = Json.map();
+        boolean success;
+        try {
+            result.setIfNotNull("result", action.get());
+            success = true;
+        } catch (RuntimeException e) {
+            logger.warn(String.format("Warm-up step [%s] failed [%s]", name, e.getMessage()));
+            result.set("error", e.getMessage());
+            success = false;
+        }
+        result.set("success", success).set("millis", TimeUnit.NANOSECONDS.toMillis(nanoClock.getAsLong() - start));
+        synchronized (steps) {
+            steps.put(name, result);
+        }
+        return success;
+    }
+
+    /**
+     * Marks the endpoint as ready
+     */
+    void finished() {
+        warmUpNanos = nanoClock.getAsLong() - createdAt - startupNanos;
+        ready = true;
+    }
+
+    boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return seconds spent starting the endpoint, without the warm-up
+     */
+    double startupSeconds() {
+        return startupNanos / 1e9;
+    }
+
+    /**
+     * @return seconds spent in the warm-up steps, zero until they finish
+     */
+    double warmUpSeconds() {
+        return ready ? warmUpNanos / 1e9 : 0d;
+    }
+
+    /**
+     * @return readiness and the result of each step
+     */
+    Json status() {
+        final Json json = Json.map();
+        synchronized (steps) {
+            for (Map.Entry<String, Json> step : steps.entrySet()) {
+                json.set(step.getKey(), step.getValue());
+            }
+        }
+        return Json.map()
+                .set("ready", ready)
+                .set("startupSeconds", startupSeconds())
+                .set("warmUpSeconds", warmUpSeconds())
+                .set("steps", json);
+    }
+
+    /**
+     * Writes a request and reads a response, so the XML factories and the classes of the
+     * converters are loaded before the first call
+     *
+     * @return number of items read from the sample response
+     */
+    static int primeConverters() {
+        try {
+            XmlRequestWriter.write(Operation.INVOICE_GET.envelope(), Json.map().set("invoice_id", "0"));
+            final Json response = XmlResponseReader.read(new ByteArrayInputStream(SAMPLE_RESPONSE.getBytes(StandardCharsets.UTF_8)),
+                    Operation.CURRENCY_LIST.entity().collection(), Operation.CURRENCY_LIST.entity().item(), null);
+            final Json items = Json.list();
+            ListPager.addItems(items, ListPager.listElement(response, Operation.CURRENCY_LIST.entity().collection()),
+                    Operation.CURRENCY_LIST.entity().item());
+            return items.toList().size();
+        } catch (XMLStreamException e) {
+            throw EndpointException.permanent(ErrorCode.GENERAL, String.format("XML converters are not working [%s]", e.getMessage()), e);
+        }
+    }
+}
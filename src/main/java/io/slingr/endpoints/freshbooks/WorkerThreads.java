@@ -0,0 +1,82 @@
+package io.slingr.endpoints.freshbooks;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Factory of the background executors used by the endpoint
+ */
+class WorkerThreads {
+
+    private WorkerThreads() {
+    }
+
+    /**
+     * Creates an unbounded pool of daemon threads. The callers are in charge of limiting
+     * how many tasks they submit at the same time.
+     *
+     * @param name prefix for the name of the threads
+     * @return executor service
+     */
+    static ExecutorService newPool(String name) {
+        return Executors.newCachedThreadPool(threadFactory(name));
+    }
+
+    /**
+     * Creates an executor that starts a virtual thread per task when the runtime supports them
+     * (Java 21 or later), otherwise it falls back to an unbounded pool of daemon threads. The
+     * callers are in charge of limiting how many tasks they submit at the same time.
+     *
+     * @param name prefix for the name of the threads of the fallback pool
+     * @return executor service
+     */
+    static ExecutorService newVirtualPool(String name) {
+        try {
+            final Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return newPool(name);
+        }
+    }
+
+    /**
+     * Creates a scheduler that runs the tasks on one daemon thread
+     *
+     * @param name prefix for the name of the thread
+     * @return scheduled executor service
+     */
+    static ScheduledExecutorService newScheduler(String name) {
+        return Executors.newSingleThreadScheduledExecutor(threadFactory(name));
+    }
+
+    /**
+     * Stops the executor, interrupting the tasks that are still running
+     *
+     * @param executor executor to stop, can be null
+     */
+    static void shutdown(ExecutorService executor) {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static ThreadFactory threadFactory(String name) {
+        final AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, String.format("%s-%s", name, counter.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
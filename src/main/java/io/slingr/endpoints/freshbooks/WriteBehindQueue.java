@@ -0,0 +1,232 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * <p>Merges the updates of the same record that arrive within a short window
+ *
+ * <p>The first update of a record opens a batch that is sent when the window ends. The updates
+ * that arrive meanwhile are merged field by field on the batch, the last value of each field
+ * wins, and all the callers receive the response of the single update sent to Freshbooks. The
+ * batches of a record are sent one after the other, in the order they were opened. A batch can
+ * be flushed before the window ends, for example before deleting the record.
+ */
+class WriteBehindQueue {
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService executor;
+    private final long windowMillis;
+
+    // both maps are guarded by this
+    private final Map<String, Batch> batches = new HashMap<>();
+    private final Map<String, CompletableFuture<Void>> sending = new HashMap<>();
+
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * @param scheduler scheduler that closes the windows
+     * @param executor executor where the batches are sent
+     * @param windowMillis time the updates of a record are collected before sending them
+     */
+    WriteBehindQueue(ScheduledExecutorService scheduler, ExecutorService executor, long windowMillis) {
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.windowMillis = Math.max(1, windowMillis);
+    }
+
+    /**
+     * Adds the update to the open batch of the record, or opens a new one
+     *
+     * @param key key of the record, it has to include the account, the entity and the id
+     * @param fields fields of the update
+     * @param sender sends the merged fields to Freshbooks, the one of the first update of the batch is used
+     * @return response of the update that includes these fields
+     */
+    synchronized CompletableFuture<Json> update(String key, Json fields, Function<Json, Json> sender) {
+        Batch batch = batches.get(key);
+        if (batch == null) {
+            batch = new Batch(sender);
+            batches.put(key, batch);
+            batch.timer = scheduler.schedule(() -> flush(key), windowMillis, TimeUnit.MILLISECONDS);
+        }
+        updates.incrementAndGet();
+        return batch.add(fields);
+    }
+
+    /**
+     * Sends the open batch of the record without waiting for the end of the window
+     *
+     * @param key key of the record
+     * @return completed when all the batches of the record were sent
+     */
+    synchronized CompletableFuture<Void> flush(String key) {
+        final Batch batch = batches.remove(key);
+        if (batch != null) {
+            batch.timer.cancel(false);
+            // the batch waits for the previous one of the record, whatever its outcome
+            final CompletableFuture<Void> previous = sending.getOrDefault(key, DONE);
+            final CompletableFuture<Void> current;
+            try {
+                current = previous.handleAsync((result, error) -> {
+                    batch.send();
+                    return (Void) null;
+                }, executor);
+            } catch (RejectedExecutionException e) {
+                batch.fail(e);
+                return previous;
+            }
+            sending.put(key, current);
+            current.whenComplete((result, error) -> {
+                if (error != null) {
+                    // the executor rejected the batch, it is stopping
+                    batch.fail(error);
+                }
+                removeSending(key, current);
+            });
+        }
+        return sending.getOrDefault(key, DONE);
+    }
+
+    private synchronized void removeSending(String key, CompletableFuture<Void> current) {
+        sending.remove(key, current);
+    }
+
+    /**
+     * Sends all the open batches and waits for them
+     *
+     * @param timeoutMillis maximum time to wait
+     */
+    void flushAll(long timeoutMillis) {
+        final List<CompletableFuture<Void>> all = new ArrayList<>();
+        final List<String> keys;
+        synchronized (this) {
+            keys = new ArrayList<>(batches.keySet());
+        }
+        for (String key : keys) {
+            all.add(flush(key));
+        }
+        try {
+            CompletableFuture.allOf(all.toArray(new CompletableFuture[0])).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // the callers receive the failures of their updates
+        }
+    }
+
+    /**
+     * Waits for the response of an update
+     *
+     * @param response response returned by {@link #update(String, Json, Function)}
+     * @return response of the update
+     * @throws EndpointException exception of the update
+     */
+    static Json await(CompletableFuture<Json> response) throws EndpointException {
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw EndpointException.permanent(ErrorCode.GENERAL, "Interrupted while waiting for the update", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof EndpointException) {
+                throw (EndpointException) e.getCause();
+            }
+            throw EndpointException.permanent(ErrorCode.GENERAL, String.format("Error sending the update [%s]", e.getCause()), e.getCause());
+        }
+    }
+
+    synchronized int pending() {
+        return batches.size();
+    }
+
+    long updates() {
+        return updates.get();
+    }
+
+    long sent() {
+        return sent.get();
+    }
+
+    long merged() {
+        return merged.get();
+    }
+
+    /**
+     * @return counters of the queue
+     */
+    Json stats() {
+        return Json.map()
+                .set("windowMillis", windowMillis)
+                .set("pending", pending())
+                .set("updates", updates.get())
+                .set("sent", sent.get())
+                .set("merged", merged.get())
+                .set("failed", failed.get());
+    }
+
+    /**
+     * Updates of a record merged in one request
+     */
+    private class Batch {
+        private final Function<Json, Json> sender;
+        private final Json fields = Json.map();
+        private final List<CompletableFuture<Json>> callers = new ArrayList<>();
+        private ScheduledFuture<?> timer;
+
+        private Batch(Function<Json, Json> sender) {
+            this.sender = sender;
+        }
+
+        private CompletableFuture<Json> add(Json update) {
+            if (update != null) {
+                fields.merge(update);
+            }
+            if (!callers.isEmpty()) {
+                merged.incrementAndGet();
+            }
+            final CompletableFuture<Json> response = new CompletableFuture<>();
+            callers.add(response);
+            return response;
+        }
+
+        private void send() {
+            sent.incrementAndGet();
+            try {
+                final Json response = sender.apply(fields);
+                for (CompletableFuture<Json> caller : callers) {
+                    caller.complete(response);
+                }
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void fail(Throwable error) {
+            failed.incrementAndGet();
+            for (CompletableFuture<Json> caller : callers) {
+                caller.completeExceptionally(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.utils.Json;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Writes the XML requests sent to Freshbooks
+ *
+ * <p>The keys that start with '@' are written as attributes, lists are written as repeated
+ * elements with the same name and maps as nested elements.
+ */
+class XmlRequestWriter {
+    private static final String ENCODING = "utf-8";
+    private static final XMLOutputFactory FACTORY = XMLOutputFactory.newInstance();
+
+    private XmlRequestWriter() {
+    }
+
+    /**
+     * Writes the request envelope
+     *
+     * @param method name of the freshbooks method
+     * @param body body of the request, can be null
+     * @return XML document encoded in UTF-8
+     * @throws XMLStreamException exception if the body cannot be written
+     */
+    static byte[] write(String method, Json body) throws XMLStreamException {
+        return write(Envelope.of(method), body);
+    }
+
+    /**
+     * Writes the body inside of the prebuilt envelope. The fields of the body are written as
+     * children of the innermost element of the envelope.
+     *
+     * @param envelope envelope of the method
+     * @param body body of the request, can be null
+     * @return XML document encoded in UTF-8
+     * @throws XMLStreamException exception if the body cannot be written
+     */
+    static byte[] write(Envelope envelope, Json body) throws XMLStreamException {
+        final Map<?, ?> fields = body != null && !body.isList() ? body.toMap() : null;
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        if (fields != null && hasAttributes(fields)) {
+            // the start tag of the envelope is already closed, so the attributes need the full writer
+            final XMLStreamWriter writer = FACTORY.createXMLStreamWriter(out, ENCODING);
+            writer.writeStartDocument(ENCODING, "1.0");
+            writer.writeStartElement("request");
+            writer.writeAttribute("method", envelope.method);
+            if (envelope.wrapper != null) {
+                writer.writeStartElement(envelope.wrapper);
+            }
+            writeFields(writer, fields);
+            writer.writeEndDocument();
+            writer.close();
+            return out.toByteArray();
+        }
+
+        out.write(envelope.start, 0, envelope.start.length);
+        if (fields != null && !fields.isEmpty()) {
+            final XMLStreamWriter writer = FACTORY.createXMLStreamWriter(out, ENCODING);
+            writeFields(writer, fields);
+            writer.flush();
+            writer.close();
+        }
+        out.write(envelope.end, 0, envelope.end.length);
+        return out.toByteArray();
+    }
+
+    private static boolean hasAttributes(Map<?, ?> fields) {
+        for (Object key : fields.keySet()) {
+            if (String.valueOf(key).startsWith("@")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void writeFields(XMLStreamWriter writer, Map<?, ?> fields) throws XMLStreamException {
+        // attributes have to be written before the child elements
+        for (Map.Entry<?, ?> field : fields.entrySet()) {
+            final String name = String.valueOf(field.getKey());
+            if (name.startsWith("@") && field.getValue() != null) {
+                writer.writeAttribute(name.substring(1), String.valueOf(field.getValue()));
+            }
+        }
+        for (Map.Entry<?, ?> field : fields.entrySet()) {
+            final String name = String.valueOf(field.getKey());
+            if (!name.startsWith("@")) {
+                writeValue(writer, name, field.getValue());
+            }
+        }
+    }
+
+    private static void writeValue(XMLStreamWriter writer, String name, Object value) throws XMLStreamException {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof Json) {
+            final Json json = (Json) value;
+            value = json.isList() ? json.toList() : json.toMap();
+        }
+        if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                writeValue(writer, name, element);
+            }
+        } else if (value instanceof Map) {
+            writer.writeStartElement(name);
+            writeFields(writer, (Map<?, ?>) value);
+            writer.writeEndElement();
+        } else {
+            writer.writeStartElement(name);
+            writer.writeCharacters(String.valueOf(value));
+            writer.writeEndElement();
+        }
+    }
+
+    /**
+     * Start and end of the request of a method, built once and copied on each request
+     */
+    static class Envelope {
+        private static final Map<String, Envelope> UNWRAPPED = new ConcurrentHashMap<>();
+
+        private final String method;
+        private final String wrapper;
+        private final byte[] start;
+        private final byte[] end;
+
+        private Envelope(String method, String wrapper) {
+            this.method = method;
+            this.wrapper = wrapper;
+            this.start = String.format("<?xml version=\"1.0\" encoding=\"%s\"?><request method=\"%s\">%s", ENCODING, escape(method),
+                    wrapper != null ? "<" + wrapper + ">" : "").getBytes(StandardCharsets.UTF_8);
+            this.end = ((wrapper != null ? "</" + wrapper + ">" : "") + "</request>").getBytes(StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @param method name of the freshbooks method
+         * @return envelope where the fields are written directly inside of the request element
+         */
+        static Envelope of(String method) {
+            return UNWRAPPED.computeIfAbsent(method, m -> new Envelope(m, null));
+        }
+
+        /**
+         * @param method name of the freshbooks method
+         * @param wrapper element where the fields are written (e.g. 'invoice'), can be null
+         * @return envelope of the method
+         */
+        static Envelope of(String method, String wrapper) {
+            return wrapper == null ? of(method) : new Envelope(method, wrapper);
+        }
+
+        String method() {
+            return method;
+        }
+
+        private static String escape(String value) {
+            return value.replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;");
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.utils.Json;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * <p>Streaming parser of the XML responses of Freshbooks
+ *
+ * <p>The response is read element by element. The items of list responses are converted one at
+ * a time and can be handed to a callback, so the complete page is never kept in memory. The
+ * status of the response is read from the root element, before any item is parsed.
+ *
+ * <p>The shape is the one of the XML converter of the framework: attributes are stored with the
+ * '@' prefix, repeated elements as lists, a single element as an object and elements without
+ * attributes nor children as strings. A list element without items has no item field.
+ *
+ * <p>When a projection is given, the elements that are not selected are skipped without being
+ * converted. Failed responses are always read completely.
+ */
+class XmlResponseReader {
+    static final String TEXT = "#text";
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private XmlResponseReader() {
+    }
+
+    private static XMLInputFactory createFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * Parses a complete response
+     *
+     * @param in XML response
+     * @return response as '{"response": {...}}'
+     * @throws XMLStreamException exception if the XML is invalid
+     */
+    static Json read(InputStream in) throws XMLStreamException {
+        return read(in, null, null, null);
+    }
+
+    /**
+     * Parses a response, handling the items of the list element one by one
+     *
+     * @param in XML response
+     * @param collection name of the list element (e.g. 'invoices'), can be null
+     * @param item name of the item elements (e.g. 'invoice')
+     * @param onItem callback that receives the items in order. When it is null the items are
+     *               added to the list element of the response
+     * @return response as '{"response": {...}}'. When there is a callback the list element only
+     * contains its attributes (pagination info)
+     * @throws XMLStreamException exception if the XML is invalid
+     */
+    static Json read(InputStream in, String collection, String item, Consumer<Json> onItem) throws XMLStreamException {
+        return read(in, collection, item, onItem, null);
+    }
+
+    /**
+     * Parses a response, handling the items of the list element one by one and keeping only the
+     * selected fields
+     *
+     * @param in XML response
+     * @param collection name of the list element (e.g. 'invoices'), can be null
+     * @param item name of the item elements (e.g. 'invoice')
+     * @param onItem callback that receives the items in order, can be null
+     * @param projection fields to keep, null keeps all of them
+     * @return response as '{"response": {...}}'
+     * @throws XMLStreamException exception if the XML is invalid
+     */
+    static Json read(InputStream in, String collection, String item, Consumer<Json> onItem,
+                     FieldProjection projection) throws XMLStreamException {
+        final XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+        try {
+            while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+                // skip prolog
+            }
+            if (!reader.isStartElement()) {
+                throw new XMLStreamException("Empty response");
+            }
+
+            final String rootName = reader.getLocalName();
+            final Map<String, Object> root = attributes(reader);
+            final boolean failed = "fail".equalsIgnoreCase(String.valueOf(root.get("@status")));
+            final FieldProjection selection = failed ? null : projection;
+
+            while (reader.hasNext()) {
+                final int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    final String name = reader.getLocalName();
+                    final FieldProjection child = selection != null ? selection.child(name) : null;
+                    if (selection != null && child == null) {
+                        skipElement(reader);
+                    } else if (!failed && name.equals(collection)) {
+                        addChild(root, name, readList(reader, item, onItem, child));
+                    } else {
+                        addChild(root, name, readElement(reader, child));
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    break;
+                }
+            }
+            return Json.map().set(rootName, toJson(root));
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static Json readList(XMLStreamReader reader, String item, Consumer<Json> onItem,
+                                 FieldProjection projection) throws XMLStreamException {
+        final Map<String, Object> list = attributes(reader);
+        final List<Json> items = onItem == null ? new ArrayList<>() : null;
+        while (reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                final String name = reader.getLocalName();
+                final FieldProjection child = projection != null ? projection.child(name) : null;
+                if (projection != null && child == null) {
+                    skipElement(reader);
+                    continue;
+                }
+                final Object value = readElement(reader, child);
+                if (name.equals(item)) {
+                    final Json json = value instanceof Json ? (Json) value : Json.map().set(TEXT, value);
+                    if (onItem != null) {
+                        onItem.accept(json);
+                    } else {
+                        items.add(json);
+                    }
+                } else {
+                    addChild(list, name, value);
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+        }
+        if (items != null && !items.isEmpty()) {
+            list.put(item, items.size() == 1 ? items.get(0) : items);
+        }
+        return toJson(list);
+    }
+
+    /**
+     * Reads the current element until its end tag
+     *
+     * @param projection fields to keep, null or a full selection keeps all of them
+     * @return the text of the element, or a Json when it has attributes or children
+     */
+    private static Object readElement(XMLStreamReader reader, FieldProjection projection) throws XMLStreamException {
+        final FieldProjection selection = projection != null && !projection.isAll() ? projection : null;
+        final Map<String, Object> fields = attributes(reader);
+        StringBuilder text = null;
+        while (reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                final String name = reader.getLocalName();
+                final FieldProjection child = selection != null ? selection.child(name) : null;
+                if (selection != null && child == null) {
+                    skipElement(reader);
+                } else {
+                    addChild(fields, name, readElement(reader, child));
+                }
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                if (text == null) {
+                    text = new StringBuilder();
+                }
+                text.append(reader.getText());
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+        }
+
+        final String value = text != null ? text.toString() : "";
+        if (fields.isEmpty()) {
+            // none of the selected children is present
+            return selection != null ? Json.map() : value;
+        }
+        if (!value.trim().isEmpty()) {
+            fields.put(TEXT, value);
+        }
+        return toJson(fields);
+    }
+
+    /**
+     * Moves the reader to the end tag of the current element without converting its content
+     */
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static Map<String, Object> attributes(XMLStreamReader reader) {
+        final Map<String, Object> fields = new LinkedHashMap<>();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            fields.put("@" + reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+        }
+        return fields;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void addChild(Map<String, Object> fields, String name, Object value) {
+        final Object existing = fields.get(name);
+        if (existing == null) {
+            fields.put(name, value);
+        } else if (existing instanceof List) {
+            ((List<Object>) existing).add(value);
+        } else {
+            final List<Object> values = new ArrayList<>();
+            values.add(existing);
+            values.add(value);
+            fields.put(name, values);
+        }
+    }
+
+    private static Json toJson(Map<String, Object> fields) {
+        final Json json = Json.map();
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            json.set(field.getKey(), field.getValue());
+        }
+        return json;
+    }
+}
@@ -0,0 +1,51 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the Accounts class
+ */
+public class AccountsTest {
+
+    @Test
+    public void testParseCredentials() throws Exception {
+        assertTrue(Accounts.parseCredentials(null).isEmpty());
+        assertTrue(Accounts.parseCredentials(" ").isEmpty());
+
+        final Map<String, String> credentials = Accounts.parseCredentials("Acme:token1, other:token2\nthird:a:b");
+        assertEquals(Arrays.asList("acme", "other", "third"), Arrays.asList(credentials.keySet().toArray()));
+        assertEquals("token1", credentials.get("acme"));
+        assertEquals("a:b", credentials.get("third"));
+    }
+
+    @Test(expected = EndpointException.class)
+    public void testInvalidCredentials() throws Exception {
+        Accounts.parseCredentials("acme:token1,other");
+    }
+
+    @Test
+    public void testSelectAccount() throws Exception {
+        final Accounts accounts = new Accounts(Arrays.asList(account("main"), account("Acme")));
+        assertEquals("main", accounts.get(null).name());
+        assertEquals("main", accounts.get(" ").name());
+        assertEquals("Acme", accounts.get("acme").name());
+        assertSame(accounts.defaultAccount(), accounts.get("MAIN"));
+        assertEquals(2, accounts.all().size());
+        try {
+            accounts.get("unknown");
+            fail("Exception expected");
+        } catch (EndpointException e) {
+            assertTrue(e.getMessage().contains("unknown"));
+        }
+    }
+
+    private static Account account(String name) {
+        return new Account(name, null, null, null, null, null, null, null, null, null, null, null);
+    }
+}
@@ -0,0 +1,84 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the AsyncRunner class
+ */
+public class AsyncRunnerTest {
+
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void init() {
+        executor = WorkerThreads.newPool("async-test");
+    }
+
+    @AfterClass
+    public static void stop() {
+        WorkerThreads.shutdown(executor);
+    }
+
+    @Test
+    public void testSendsResults() throws Exception {
+        final BlockingQueue<Json> results = new LinkedBlockingQueue<>();
+        final AsyncRunner runner = new AsyncRunner(executor, 10, (event, data, id) -> results.add(data.set("event", event).set("id", id)));
+
+        final Json accepted = runner.submit("findInvoices", "fn-1", Json.map().set("page", 2), params -> Json.map().set("page", params.integer("page")));
+        assertEquals("fn-1", accepted.string("correlationId"));
+        runner.submit("createInvoice", "fn-2", Json.map(), params -> {
+            throw EndpointException.permanent(ErrorCode.API, "invalid invoice");
+        });
+
+        final Json first = results.poll(5, TimeUnit.SECONDS);
+        final Json second = results.poll(5, TimeUnit.SECONDS);
+        final Json success = "fn-1".equals(first.string("id")) ? first : second;
+        final Json failure = success == first ? second : first;
+
+        assertEquals(AsyncRunner.RESULT_EVENT, success.string("event"));
+        assertTrue(success.bool("success"));
+        assertEquals(2, (int) success.json("response").integer("page"));
+        assertEquals("fn-2", failure.string("correlationId"));
+        assertFalse(failure.bool("success"));
+        assertEquals("invalid invoice", failure.json("error").string("message"));
+    }
+
+    @Test
+    public void testRejectsWhenFull() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final AsyncRunner runner = new AsyncRunner(executor, 1, (event, data, id) -> done.countDown());
+
+        runner.submit("findClients", "fn-1", Json.map(), params -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Json.map();
+        });
+        try {
+            runner.submit("findClients", "fn-2", Json.map(), params -> Json.map());
+            fail("Exception expected");
+        } catch (EndpointException e) {
+            assertEquals(429, e.getReturnCode());
+        }
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1L, (long) runner.stats().longInteger("rejected"));
+    }
+}
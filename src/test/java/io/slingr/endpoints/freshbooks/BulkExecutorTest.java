@@ -0,0 +1,98 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the BulkExecutor class
+ */
+public class BulkExecutorTest {
+
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void init() {
+        executor = WorkerThreads.newVirtualPool("bulk-test");
+    }
+
+    @AfterClass
+    public static void stop() {
+        WorkerThreads.shutdown(executor);
+    }
+
+    @Test
+    public void testFailedItemsDoNotStopTheBatch() {
+        final List<Json> items = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            items.add(Json.map().set("number", i));
+        }
+
+        final BulkExecutor bulk = new BulkExecutor(executor, 3);
+        final Json result = bulk.execute(items, item -> {
+            if (item.integer("number") % 4 == 0) {
+                throw EndpointException.permanent(ErrorCode.API, "FreshBooks error [invalid] ");
+            }
+            return Json.map().set("id", item.integer("number"));
+        });
+
+        assertEquals(10, (int) result.integer("total"));
+        assertEquals(3, (int) result.integer("failed"));
+        assertEquals(7, (int) result.integer("succeeded"));
+
+        final List<Json> results = result.jsons("results");
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i, (int) results.get(i).integer("index"));
+            assertEquals(i % 4 != 0, results.get(i).bool("success"));
+        }
+    }
+
+    @Test
+    public void testConcurrencyLimit() {
+        final List<Json> items = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            items.add(Json.map());
+        }
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        new BulkExecutor(executor, 4).execute(items, item -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return item;
+        });
+
+        assertTrue(maxRunning.get() <= 4);
+    }
+
+    @Test
+    public void testItemsInheritTheAccount() {
+        final List<Json> items = BulkExecutor.items(Json.map()
+                .set("account", "acme")
+                .set("items", Json.list()
+                        .push(Json.map().set("client_id", "1"))
+                        .push(Json.map().set("client_id", "2").set("account", "other"))));
+        assertEquals("acme", items.get(0).string("account"));
+        assertEquals("other", items.get(1).string("account"));
+    }
+
+    @Test(expected = EndpointException.class)
+    public void testInvalidRequest() {
+        BulkExecutor.items(Json.map().set("client_id", "1"));
+    }
+}
@@ -0,0 +1,79 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.utils.Json;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the Bulkhead class
+ */
+public class BulkheadTest {
+
+    @Test
+    public void testRejectsWhenFull() {
+        final Bulkhead bulkhead = new Bulkhead("invoice", 2, 0);
+
+        bulkhead.acquire();
+        bulkhead.acquire();
+        assertEquals(2, bulkhead.inFlight());
+
+        try {
+            bulkhead.acquire();
+            fail("There are no free slots");
+        } catch (EndpointException e) {
+            assertTrue(Failures.isRejected(e));
+            assertEquals(429, e.getReturnCode());
+        }
+        assertEquals(1, bulkhead.rejected());
+
+        bulkhead.release();
+        bulkhead.acquire();
+        assertEquals(2, bulkhead.inFlight());
+    }
+
+    @Test
+    public void testFanOutWaitsForASlot() throws Exception {
+        final Bulkhead bulkhead = new Bulkhead("invoice", 1, 0);
+        bulkhead.acquire();
+        final Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            bulkhead.release();
+        });
+        releaser.start();
+
+        final Json response = Bulkhead.waitForSlot(() -> {
+            bulkhead.acquire();
+            try {
+                return Json.map().set("ok", true);
+            } finally {
+                bulkhead.release();
+            }
+        }, 5000);
+        releaser.join();
+        assertTrue(response.bool("ok"));
+        assertTrue(bulkhead.rejected() > 0);
+    }
+
+    @Test
+    public void testFanOutDoesNotRepeatOtherFailures() {
+        final AtomicInteger calls = new AtomicInteger();
+        try {
+            Bulkhead.waitForSlot(() -> {
+                calls.incrementAndGet();
+                throw Failures.rejected("circuit", "The circuit is open", 503);
+            }, 5000);
+            fail("The circuit rejection is not repeated");
+        } catch (EndpointException e) {
+            assertEquals(503, e.getReturnCode());
+        }
+        assertEquals(1, calls.get());
+    }
+}
@@ -0,0 +1,126 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the ChangePoller class
+ */
+public class ChangePollerTest {
+
+    private static final ChangePoller.Source INVOICES = new ChangePoller.Source(Operation.INVOICE_LIST, "invoiceChanged");
+
+    private final List<Json> records = new ArrayList<>();
+    private final List<Json> events = new ArrayList<>();
+    private final AtomicBoolean failSecondPage = new AtomicBoolean();
+    private final AtomicReference<String> hidden = new AtomicReference<>();
+
+    private final ChangePoller poller = new ChangePoller(Collections.singletonList(INVOICES), (source, page, onItem) -> {
+        if (page == 2 && failSecondPage.get()) {
+            throw EndpointException.permanent(ErrorCode.API, "page failed");
+        }
+        final int pages = Math.max(1, (records.size() + 1) / 2);
+        for (int i = (page - 1) * 2; i < Math.min(records.size(), page * 2); i++) {
+            if (!records.get(i).string("invoice_id").equals(hidden.get())) {
+                onItem.accept(records.get(i));
+            }
+        }
+        return Json.map().set("response", Json.map().set("invoices", Json.map()
+                .set("@page", String.valueOf(page))
+                .set("@pages", String.valueOf(pages))
+                .set("@total", String.valueOf(records.size()))));
+    }, (event, data) -> events.add(data.set("event", event)));
+
+    @Test
+    public void testDetectsChanges() {
+        records.add(invoice("1", "draft"));
+        records.add(invoice("2", "draft"));
+        records.add(invoice("3", "sent"));
+
+        poller.poll();
+        assertTrue("the first poll only fills the index", events.isEmpty());
+
+        records.set(1, invoice("2", "sent"));
+        records.remove(2);
+        records.add(invoice("4", "draft"));
+        poller.poll();
+
+        assertEquals(2, events.size());
+        assertEvent(events.get(0), "updated", "2");
+        assertEquals("sent", events.get(0).json("invoice").string("status"));
+        assertEvent(events.get(1), "created", "4");
+
+        // the deletion is confirmed by the second poll where the record is missing
+        events.clear();
+        poller.poll();
+        assertEquals(1, events.size());
+        assertEvent(events.get(0), "deleted", "3");
+        assertNull(events.get(0).json("invoice"));
+
+        events.clear();
+        poller.poll();
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testRecordMissingFromOnePollIsNotDeleted() {
+        for (int i = 1; i <= 4; i++) {
+            records.add(invoice(String.valueOf(i), "draft"));
+        }
+        poller.poll();
+
+        // the pages shifted while they were walked and the record was not seen
+        hidden.set("3");
+        poller.poll();
+        hidden.set(null);
+        poller.poll();
+        assertTrue(events.isEmpty());
+
+        hidden.set("3");
+        poller.poll();
+        poller.poll();
+        assertEquals(1, events.size());
+        assertEvent(events.get(0), "deleted", "3");
+    }
+
+    @Test
+    public void testFailedPollDoesNotReportDeletions() {
+        for (int i = 1; i <= 4; i++) {
+            records.add(invoice(String.valueOf(i), "draft"));
+        }
+        poller.poll();
+
+        failSecondPage.set(true);
+        poller.poll();
+        assertTrue(events.isEmpty());
+        assertEquals(1L, (long) poller.stats().longInteger("failedPolls"));
+
+        failSecondPage.set(false);
+        records.remove(3);
+        poller.poll();
+        assertTrue(events.isEmpty());
+        poller.poll();
+        assertEquals(1, events.size());
+        assertEvent(events.get(0), "deleted", "4");
+    }
+
+    private static void assertEvent(Json event, String changeType, String id) {
+        assertEquals("invoiceChanged", event.string("event"));
+        assertEquals(changeType, event.string("changeType"));
+        assertEquals(id, event.string("id"));
+    }
+
+    private static Json invoice(String id, String status) {
+        return Json.map().set("invoice_id", id).set("status", status);
+    }
+}
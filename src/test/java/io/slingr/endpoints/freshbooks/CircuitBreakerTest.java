@@ -0,0 +1,129 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the CircuitBreaker class
+ */
+public class CircuitBreakerTest {
+
+    @Test
+    public void testOpensAtFailureRate() {
+        final AtomicLong now = new AtomicLong();
+        final List<String> changes = new ArrayList<>();
+        final CircuitBreaker breaker = new CircuitBreaker("invoice", 10, 4, 50, 1000, 1, now::get,
+                (name, previous, current) -> changes.add(name + ":" + previous + ">" + current));
+
+        breaker.record(breaker.acquire(), true);
+        breaker.record(breaker.acquire(), true);
+        breaker.record(breaker.acquire(), false);
+        // below the minimum number of calls
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+
+        breaker.record(breaker.acquire(), false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(1, breaker.opened());
+
+        try {
+            breaker.acquire();
+            fail("The circuit is open");
+        } catch (EndpointException e) {
+            assertTrue(Failures.isRejected(e));
+            assertTrue(e.isRetryable());
+            assertEquals(503, e.getReturnCode());
+        }
+        assertEquals(1, breaker.rejected());
+        assertEquals(1, changes.size());
+        assertEquals("invoice:CLOSED>OPEN", changes.get(0));
+    }
+
+    @Test
+    public void testTrialCloses() {
+        final AtomicLong now = new AtomicLong();
+        final List<CircuitBreaker.State> states = new ArrayList<>();
+        final CircuitBreaker breaker = new CircuitBreaker("client", 2, 2, 50, 1000, 1, now::get,
+                (name, previous, current) -> states.add(current));
+
+        breaker.record(breaker.acquire(), true);
+        breaker.record(breaker.acquire(), true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+        now.addAndGet(1000);
+        final boolean trial = breaker.acquire();
+        assertTrue(trial);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+
+        // only one trial call at a time
+        try {
+            breaker.acquire();
+            fail("The trial call is in progress");
+        } catch (EndpointException e) {
+            assertTrue(Failures.isRejected(e));
+        }
+
+        breaker.record(trial, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertFalse(breaker.acquire());
+        assertEquals(3, states.size());
+        assertEquals(CircuitBreaker.State.CLOSED, states.get(2));
+    }
+
+    @Test
+    public void testTrialReopens() {
+        final AtomicLong now = new AtomicLong();
+        final CircuitBreaker breaker = new CircuitBreaker("recurring", 2, 2, 50, 1000, 1, now::get, null);
+
+        breaker.record(breaker.acquire(), true);
+        breaker.record(breaker.acquire(), true);
+
+        now.addAndGet(1000);
+        breaker.record(breaker.acquire(), true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(2, breaker.opened());
+
+        // the open time starts again
+        now.addAndGet(500);
+        try {
+            breaker.acquire();
+            fail("The circuit is open");
+        } catch (EndpointException e) {
+            assertTrue(Failures.isRejected(e));
+        }
+    }
+
+    @Test
+    public void testCancelledTrial() {
+        final AtomicLong now = new AtomicLong();
+        final CircuitBreaker breaker = new CircuitBreaker("invoice", 2, 2, 50, 1000, 1, now::get, null);
+
+        breaker.record(breaker.acquire(), true);
+        breaker.record(breaker.acquire(), true);
+        now.addAndGet(1000);
+
+        breaker.cancel(breaker.acquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertTrue(breaker.acquire());
+    }
+
+    @Test
+    public void testSuccessesKeepItClosed() {
+        final AtomicLong now = new AtomicLong();
+        final CircuitBreaker breaker = new CircuitBreaker("invoice", 4, 4, 50, 1000, 1, now::get, null);
+
+        breaker.record(breaker.acquire(), true);
+        for (int i = 0; i < 10; i++) {
+            breaker.record(breaker.acquire(), false);
+        }
+        // the old failure left the window
+        breaker.record(breaker.acquire(), true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(1, breaker.stats().integer("failures").intValue());
+    }
+}
@@ -0,0 +1,143 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.utils.Json;
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the DeltaSync class
+ */
+public class DeltaSyncTest {
+    private static final ZoneId UTC = ZoneOffset.UTC;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final MemoryDataStore memory = new MemoryDataStore();
+    private final List<Json> requests = Collections.synchronizedList(new ArrayList<>());
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private DeltaSync deltaSync(String now) {
+        return new DeltaSync(memory.store(), "acme", UTC, Clock.fixed(Instant.parse(now), UTC));
+    }
+
+    /**
+     * @return fetcher of a list with the given number of pages, it records the filters it receives
+     */
+    private Function<Json, Json> pages(int pages) {
+        return filters -> {
+            requests.add(filters);
+            final int page = ListPager.toInt(filters.string("page"), 1);
+            return Json.map().set("response", Json.map().set("clients", Json.map()
+                    .set("@page", page)
+                    .set("@pages", pages)
+                    .set("@total", pages)
+                    .set("client", Json.list().push(Json.map().set("client_id", String.valueOf(page))))));
+        };
+    }
+
+    private Json last() {
+        return requests.get(requests.size() - 1);
+    }
+
+    @Test
+    public void testFirstRunReturnsAllTheRecords() {
+        final Json batch = deltaSync("2026-03-01T10:00:00Z").next("client", "clients", Json.map().set("batchSize", 20), pages(1));
+
+        assertNull(last().string("updated_from"));
+        assertEquals("1", last().string("page"));
+        assertEquals("20", last().string("per_page"));
+        assertFalse(batch.bool("hasMore"));
+        assertEquals(1, batch.jsons("records").size());
+        assertNull(batch.string("updatedFrom"));
+        // the start of the run minus the overlap
+        assertEquals("2026-03-01 09:59:00", batch.string("watermark"));
+    }
+
+    @Test
+    public void testPagesKeepTheBatchSizeOfTheRun() {
+        final DeltaSync sync = deltaSync("2026-03-01T10:00:00Z");
+
+        assertTrue(sync.next("client", "clients", Json.map().set("batchSize", 2), pages(3)).bool("hasMore"));
+        final Json second = sync.next("client", "clients", Json.map().set("batchSize", 50), pages(3));
+        assertTrue(second.bool("hasMore"));
+        assertEquals("2", last().string("page"));
+        assertEquals("2", last().string("per_page"));
+        assertEquals(2, second.integer("batchSize").intValue());
+
+        assertFalse(sync.next("client", "clients", null, pages(3)).bool("hasMore"));
+        assertEquals("3", last().string("page"));
+        assertEquals("2", last().string("per_page"));
+
+        // the next run uses the new batch size
+        sync.next("client", "clients", Json.map().set("batchSize", 50), pages(1));
+        assertEquals("1", last().string("page"));
+        assertEquals("50", last().string("per_page"));
+    }
+
+    @Test
+    public void testWatermarkIsPromotedAtTheEndOfTheRun() {
+        deltaSync("2026-03-01T10:00:00Z").next("client", "clients", null, pages(1));
+
+        final DeltaSync later = deltaSync("2026-03-02T08:30:00Z");
+        final Json first = later.next("client", "clients", null, pages(2));
+        assertEquals("2026-03-01 09:59:00", last().string("updated_from"));
+        assertEquals("2026-03-01 09:59:00", first.string("watermark"));
+
+        final Json second = later.next("client", "clients", null, pages(2));
+        assertEquals("2026-03-01 09:59:00", last().string("updated_from"));
+        assertEquals("2026-03-01 09:59:00", second.string("updatedFrom"));
+        assertEquals("2026-03-02 08:29:00", second.string("watermark"));
+        assertEquals(1, memory.size());
+    }
+
+    @Test
+    public void testResetStartsFromScratch() {
+        final DeltaSync sync = deltaSync("2026-03-01T10:00:00Z");
+        sync.next("client", "clients", null, pages(1));
+        sync.next("client", "clients", null, pages(3));
+        assertEquals("1", last().string("page"));
+
+        final Json batch = sync.next("client", "clients", Json.map().set("reset", true), pages(3));
+        assertNull(last().string("updated_from"));
+        assertEquals("1", last().string("page"));
+        assertNull(batch.string("updatedFrom"));
+    }
+
+    @Test
+    public void testConcurrentCallsFetchDifferentPages() throws Exception {
+        final DeltaSync sync = deltaSync("2026-03-01T10:00:00Z");
+        final Function<Json, Json> slowPages = filters -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return pages(3).apply(filters);
+        };
+
+        final Future<Json> first = executor.submit(() -> sync.next("client", "clients", null, slowPages));
+        final Future<Json> second = executor.submit(() -> sync.next("client", "clients", null, slowPages));
+        final int firstPage = first.get(5, TimeUnit.SECONDS).integer("page");
+        final int secondPage = second.get(5, TimeUnit.SECONDS).integer("page");
+
+        assertEquals(3, firstPage + secondPage);
+    }
+}
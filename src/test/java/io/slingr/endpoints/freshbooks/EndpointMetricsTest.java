@@ -0,0 +1,78 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.utils.Json;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the EndpointMetrics and LatencyHistogram classes
+ */
+public class EndpointMetricsTest {
+
+    @Test
+    public void testPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(20));
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(2000));
+        }
+
+        assertEquals(100, histogram.count());
+        final double p50 = histogram.percentile(0.5);
+        assertTrue(p50 > 10 && p50 <= 25);
+        final double p99 = histogram.percentile(0.99);
+        assertTrue(p99 > 1000 && p99 <= 2500);
+        assertEquals(0d, new LatencyHistogram().percentile(0.5), 0d);
+    }
+
+    @Test
+    public void testFailuresByType() {
+        final EndpointMetrics metrics = new EndpointMetrics();
+        metrics.recordResponse("invoice.get", TimeUnit.MILLISECONDS.toNanos(30), false);
+        metrics.recordResponse("invoice.get", TimeUnit.MILLISECONDS.toNanos(30), true);
+        metrics.recordTransportFailure("invoice.get", TimeUnit.MILLISECONDS.toNanos(30));
+        metrics.recordRejection("invoice.get");
+
+        final Json invoiceGet = metrics.toJson().json("methods").json("invoice.get");
+        assertEquals(3L, (long) invoiceGet.longInteger("requests"));
+        assertEquals(1L, (long) invoiceGet.longInteger("apiFailures"));
+        assertEquals(1L, (long) invoiceGet.longInteger("transportFailures"));
+        // the rejections were not sent, they are not requests
+        assertEquals(1L, (long) invoiceGet.longInteger("rejections"));
+    }
+
+    @Test
+    public void testPrometheusFormat() {
+        final EndpointMetrics metrics = new EndpointMetrics();
+        metrics.recordResponse("client.list", TimeUnit.MILLISECONDS.toNanos(7), false);
+        metrics.gauge("rate_limiter_rate", "Current rate", () -> 2.5d);
+        metrics.counter("retries_total", "Retries", () -> 4L);
+
+        final String text = metrics.toPrometheus();
+        assertTrue(text.contains("freshbooks_requests_total{method=\"client.list\"} 1\n"));
+        assertTrue(text.contains("freshbooks_request_duration_seconds_bucket{method=\"client.list\",le=\"0.005\"} 0\n"));
+        assertTrue(text.contains("freshbooks_request_duration_seconds_bucket{method=\"client.list\",le=\"0.01\"} 1\n"));
+        assertTrue(text.contains("freshbooks_request_duration_seconds_bucket{method=\"client.list\",le=\"+Inf\"} 1\n"));
+        assertTrue(text.contains("# TYPE freshbooks_rate_limiter_rate gauge\n"));
+        assertTrue(text.contains("freshbooks_rate_limiter_rate 2.5\n"));
+        assertTrue(text.contains("# TYPE freshbooks_retries_total counter\n"));
+        assertTrue(text.contains("freshbooks_retries_total 4\n"));
+    }
+
+    @Test
+    public void testLabeledValuesShareTheHeader() {
+        final EndpointMetrics metrics = new EndpointMetrics();
+        metrics.counter("circuit_opened_total", EndpointMetrics.labels("account", "acme", "group", "client"), "Circuits opened", () -> 1L);
+        metrics.counter("circuit_opened_total", EndpointMetrics.labels("account", "globex", "group", "client"), "Circuits opened", () -> 3L);
+
+        final String text = metrics.toPrometheus();
+        assertEquals(text.indexOf("# TYPE freshbooks_circuit_opened_total counter\n"), text.lastIndexOf("# TYPE freshbooks_circuit_opened_total"));
+        assertTrue(text.contains("freshbooks_circuit_opened_total{account=\"acme\",group=\"client\"} 1\n"));
+        assertTrue(text.contains("freshbooks_circuit_opened_total{account=\"globex\",group=\"client\"} 3\n"));
+    }
+}
@@ -0,0 +1,115 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.utils.Json;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the ExpiringCache class
+ */
+public class ExpiringCacheTest {
+
+    @Test
+    public void testExpiration() {
+        final AtomicLong now = new AtomicLong(1000);
+        final AtomicInteger loads = new AtomicInteger();
+        final ExpiringCache<String, String> cache = new ExpiringCache<>("test", 100, now::get);
+
+        assertEquals("value-1", cache.get("key", key -> "value-" + loads.incrementAndGet()));
+        now.addAndGet(50);
+        assertEquals("value-1", cache.get("key", key -> "value-" + loads.incrementAndGet()));
+        now.addAndGet(50);
+        assertEquals("value-2", cache.get("key", key -> "value-" + loads.incrementAndGet()));
+
+        final Json stats = cache.stats();
+        assertEquals(1L, (long) stats.longInteger("hits"));
+        assertEquals(2L, (long) stats.longInteger("misses"));
+    }
+
+    @Test
+    public void testInvalidate() {
+        final AtomicInteger loads = new AtomicInteger();
+        final ExpiringCache<String, String> cache = new ExpiringCache<>("test", 60000);
+
+        cache.get("key", key -> "value-" + loads.incrementAndGet());
+        cache.invalidateAll();
+        assertEquals("value-2", cache.get("key", key -> "value-" + loads.incrementAndGet()));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        final AtomicLong now = new AtomicLong(1000);
+        final ExpiringCache<String, String> cache = new ExpiringCache<>("test", 60000, 2, now::get);
+
+        cache.get("a", key -> key);
+        cache.get("b", key -> key);
+        cache.get("a", key -> "reloaded");
+        cache.get("c", key -> key);
+
+        assertEquals(2, cache.size());
+        assertEquals("a", cache.get("a", key -> "reloaded"));
+        assertEquals("reloaded", cache.get("b", key -> "reloaded"));
+        assertEquals(2L, (long) cache.stats().longInteger("evictions"));
+    }
+
+    @Test
+    public void testDisabled() {
+        final AtomicInteger loads = new AtomicInteger();
+        final ExpiringCache<String, String> cache = new ExpiringCache<>("test", 0);
+
+        cache.get("key", key -> "value-" + loads.incrementAndGet());
+        cache.get("key", key -> "value-" + loads.incrementAndGet());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testInvalidateDuringLoadIsNotOverwritten() throws Exception {
+        final ExpiringCache<String, String> cache = new ExpiringCache<>("test", 60000);
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // the slow load reads the value before it is modified and invalidated
+            final Future<String> slow = executor.submit(() -> cache.get("key", key -> {
+                loading.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "stale";
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            cache.invalidate("key");
+            release.countDown();
+
+            assertEquals("stale", slow.get(5, TimeUnit.SECONDS));
+            assertEquals(0, cache.size());
+            assertEquals("fresh", cache.get("key", key -> "fresh"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testReturnsCopiesOfTheValues() {
+        final ExpiringCache<String, Json> cache = new ExpiringCache<>("test", 60000, 0, System::currentTimeMillis, CanonicalJson::copy);
+
+        final Json loaded = cache.get("invoice:1", key -> Json.map().set("response", Json.map().set("status", "draft")));
+        loaded.json("response").set("status", "modified");
+        final Json cached = cache.get("invoice:1", key -> null);
+        assertEquals("draft", cached.json("response").string("status"));
+
+        cached.json("response").set("status", "modified");
+        assertEquals("draft", cache.get("invoice:1", key -> null).json("response").string("status"));
+    }
+}
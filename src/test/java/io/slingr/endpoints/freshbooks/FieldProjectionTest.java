@@ -0,0 +1,63 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.utils.Json;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the FieldProjection class
+ */
+public class FieldProjectionTest {
+
+    @Test
+    public void testParse() throws Exception {
+        assertNull(FieldProjection.parse(null));
+        assertNull(FieldProjection.parse(" "));
+
+        final FieldProjection fromText = FieldProjection.parse("invoice.amount,response.invoice.invoice_id");
+        final FieldProjection fromList = FieldProjection.parse(Json.list().push("invoice.invoice_id").push("invoice.*.amount"));
+        assertEquals(fromText.toString(), fromList.toString());
+
+        final FieldProjection invoice = fromText.child("invoice");
+        assertFalse(invoice.isAll());
+        assertTrue(invoice.child("amount").isAll());
+        assertNull(invoice.child("notes"));
+        assertNull(fromText.child("client"));
+
+        // a shorter path selects the whole subtree
+        assertTrue(FieldProjection.parse("invoice.lines.line, invoice").child("invoice").isAll());
+    }
+
+    @Test(expected = EndpointException.class)
+    public void testInvalidFields() throws Exception {
+        FieldProjection.parse(10);
+    }
+
+    @Test
+    public void testApply() throws Exception {
+        final Json response = Json.map().set("response", Json.map()
+                .set("@status", "ok")
+                .set("invoices", Json.map()
+                        .set("@total", "2")
+                        .set("invoice", Json.list()
+                                .push(Json.map().set("invoice_id", "1").set("amount", "10.00"))
+                                .push(Json.map().set("invoice_id", "2").set("amount", "20.00")))));
+
+        final Json projected = FieldProjection.parse("invoices.invoice.*.amount").apply(response).json("response");
+        assertEquals("ok", projected.string("@status"));
+        assertEquals("2", projected.json("invoices").string("@total"));
+        final List<Json> invoices = projected.json("invoices").jsons("invoice");
+        assertEquals("20.00", invoices.get(1).string("amount"));
+        assertFalse(invoices.get(1).contains("invoice_id"));
+
+        // the original response is not modified
+        assertTrue(response.json("response").json("invoices").jsons("invoice").get(1).contains("invoice_id"));
+
+        final Json failed = Json.map().set("response", Json.map().set("@status", "fail").set("error", "Not found"));
+        assertSame(failed, FieldProjection.parse("invoice").apply(failed));
+    }
+}
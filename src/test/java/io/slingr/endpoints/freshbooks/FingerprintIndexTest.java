@@ -0,0 +1,44 @@
+package io.slingr.endpoints.freshbooks;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the FingerprintIndex class
+ */
+public class FingerprintIndexTest {
+
+    @Test
+    public void testPutAndGet() {
+        final FingerprintIndex index = new FingerprintIndex();
+        for (long id = 1; id <= 1000; id++) {
+            index.put(id, id * 31);
+        }
+        index.put(10, 7);
+
+        assertEquals(1000, index.size());
+        assertEquals(7L, index.get(10, -1));
+        assertEquals(31L * 999, index.get(999, -1));
+        assertEquals(-1L, index.get(1001, -1));
+        assertTrue(index.contains(1000));
+        assertFalse(index.contains(0));
+    }
+
+    @Test
+    public void testForEach() {
+        final FingerprintIndex index = new FingerprintIndex(2);
+        index.put(5, 50);
+        index.put(Long.MAX_VALUE, 1);
+        index.put(0, 2);
+
+        final AtomicInteger count = new AtomicInteger();
+        index.forEach((id, fingerprint) -> {
+            count.incrementAndGet();
+            assertEquals(fingerprint, index.get(id, -1));
+        });
+        assertEquals(3, count.get());
+    }
+}
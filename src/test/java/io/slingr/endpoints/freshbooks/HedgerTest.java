@@ -0,0 +1,134 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the Hedger class
+ */
+public class HedgerTest {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static RecentLatency latencies(long millis) {
+        final RecentLatency latency = new RecentLatency();
+        for (int i = 0; i < Hedger.MIN_SAMPLES; i++) {
+            latency.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+        return latency;
+    }
+
+    @Test
+    public void testNotHedgedWithoutLatencies() {
+        final Hedger hedger = new Hedger(executor, 95, 5);
+        final Thread caller = Thread.currentThread();
+
+        final Json response = hedger.execute(new RecentLatency(), attempt -> Json.map().set("sameThread", Thread.currentThread() == caller));
+        assertTrue(response.bool("sameThread"));
+        assertEquals(0, hedger.hedges());
+    }
+
+    @Test
+    public void testSlowRequestIsHedged() throws Exception {
+        final Hedger hedger = new Hedger(executor, 95, 5);
+        final AtomicInteger attempts = new AtomicInteger();
+        final CountDownLatch aborted = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(1);
+
+        final Json response = hedger.execute(latencies(10), attempt -> {
+            if (attempts.incrementAndGet() == 1) {
+                // the first request hangs until it is aborted
+                attempt.onCancel(() -> {
+                    aborted.countDown();
+                    released.countDown();
+                });
+                try {
+                    released.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw EndpointException.retryable(ErrorCode.CLIENT, "Request aborted");
+            }
+            return Json.map().set("attempt", 2);
+        });
+
+        assertEquals(2, response.integer("attempt").intValue());
+        assertTrue(aborted.await(1, TimeUnit.SECONDS));
+        assertEquals(1, hedger.hedges());
+        assertEquals(1, hedger.hedgesWon());
+    }
+
+    @Test
+    public void testBudgetLimitsHedges() {
+        final Hedger hedger = new Hedger(executor, 95, 0);
+        final RecentLatency latency = latencies(10);
+
+        for (int i = 0; i < 12; i++) {
+            final int decisions = i + 1;
+            final AtomicInteger attempts = new AtomicInteger();
+            hedger.execute(latency, attempt -> {
+                if (attempts.incrementAndGet() == 1) {
+                    // the first request answers once the hedger decided whether to hedge it
+                    awaitCondition(() -> hedger.hedges() + hedger.stats().integer("budgetExhausted") >= decisions);
+                }
+                return Json.map();
+            });
+        }
+        // only the initial tokens are spent
+        assertEquals(10, hedger.hedges());
+        assertEquals(2, hedger.stats().integer("budgetExhausted").intValue());
+    }
+
+    @Test
+    public void testFailsWhenBothAttemptsFail() {
+        final Hedger hedger = new Hedger(executor, 95, 5);
+        final AtomicInteger attempts = new AtomicInteger();
+        final CountDownLatch hedged = new CountDownLatch(1);
+
+        try {
+            hedger.execute(latencies(10), attempt -> {
+                final int number = attempts.incrementAndGet();
+                if (number == 1) {
+                    // the first request fails after the hedge was sent
+                    try {
+                        hedged.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                } else {
+                    hedged.countDown();
+                }
+                throw EndpointException.retryable(ErrorCode.TIMEOUT, "Timeout " + number);
+            });
+            fail("Both attempts failed");
+        } catch (EndpointException e) {
+            assertTrue(e.isRetryable());
+        }
+        assertEquals(2, attempts.get());
+        assertEquals(1, hedger.hedges());
+        assertEquals(0, hedger.hedgesWon());
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.yield();
+        }
+    }
+}
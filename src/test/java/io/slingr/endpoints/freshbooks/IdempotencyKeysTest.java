@@ -0,0 +1,197 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the IdempotencyKeys class
+ */
+public class IdempotencyKeysTest {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final MemoryDataStore memory = new MemoryDataStore();
+    private final AtomicLong now = new AtomicLong(1000000);
+    private final IdempotencyKeys keys = new IdempotencyKeys(memory.store(), "acme", now::get);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static Json created(String id) {
+        return Json.map().set("response", Json.map().set("@status", "ok").set("client_id", id));
+    }
+
+    @Test
+    public void testDoneKeyIsReplayed() {
+        final AtomicInteger creates = new AtomicInteger();
+
+        final Json first = keys.create("client.create", "k1", null, lookup -> created(String.valueOf(creates.incrementAndGet())));
+        final Json second = keys.create("client.create", "k1", null, lookup -> created(String.valueOf(creates.incrementAndGet())));
+
+        assertEquals(1, creates.get());
+        assertEquals("1", first.json("response").string("client_id"));
+        assertEquals("1", second.json("response").string("client_id"));
+        assertEquals(1, keys.stats().integer("replays").intValue());
+
+        // other keys are created again
+        keys.create("client.create", "k2", null, lookup -> created(String.valueOf(creates.incrementAndGet())));
+        assertEquals(2, creates.get());
+    }
+
+    @Test
+    public void testConcurrentCallsWithTheSameKey() throws Exception {
+        final AtomicInteger creates = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final Future<Json> first = executor.submit(() -> keys.create("client.create", "k1", null, lookup -> {
+            creates.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return created("7");
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        try {
+            keys.create("client.create", "k1", () -> created("7"), lookup -> created(String.valueOf(creates.incrementAndGet())));
+            fail("The key is claimed by the first call");
+        } catch (EndpointException e) {
+            assertTrue(e.isRetryable());
+        }
+        assertEquals(1, keys.stats().integer("inProgress").intValue());
+
+        release.countDown();
+        assertEquals("7", first.get(5, TimeUnit.SECONDS).json("response").string("client_id"));
+        assertEquals("7", keys.create("client.create", "k1", null, lookup -> created("8")).json("response").string("client_id"));
+        assertEquals(1, creates.get());
+        assertEquals(1, memory.saves());
+    }
+
+    @Test
+    public void testStalePendingKeyIsReclaimed() {
+        // a call that stopped after claiming the key
+        memory.store().save(Json.map()
+                .set("key", "acme:client.create:k1")
+                .set("status", "pending")
+                .set("createdAt", now.get())
+                .set("leaseUntil", now.get() + IdempotencyKeys.LEASE));
+        final AtomicInteger creates = new AtomicInteger();
+
+        try {
+            keys.create("client.create", "k1", () -> created("3"), lookup -> created(String.valueOf(creates.incrementAndGet())));
+            fail("The lease did not expire");
+        } catch (EndpointException e) {
+            assertTrue(e.isRetryable());
+        }
+
+        now.addAndGet(IdempotencyKeys.LEASE + 1);
+        final Json response = keys.create("client.create", "k1", () -> created("3"), lookup -> created(String.valueOf(creates.incrementAndGet())));
+        assertEquals("3", response.json("response").string("client_id"));
+        assertEquals(0, creates.get());
+        assertEquals(1, keys.stats().integer("reclaimed").intValue());
+        assertEquals(1, keys.stats().integer("foundByLookup").intValue());
+        assertEquals(1, memory.size());
+    }
+
+    @Test
+    public void testFailedCreateReleasesTheKey() {
+        final AtomicInteger lookups = new AtomicInteger();
+
+        try {
+            keys.create("client.create", "k1", () -> null, lookup -> {
+                throw EndpointException.retryable(ErrorCode.TIMEOUT, "Timeout");
+            });
+            fail("The create failed");
+        } catch (EndpointException e) {
+            assertEquals("Timeout", e.getMessage());
+        }
+
+        // the retry of the app looks up the record before creating it again
+        final Json response = keys.create("client.create", "k1", () -> {
+            lookups.incrementAndGet();
+            return null;
+        }, lookup -> created("5"));
+        assertEquals("5", response.json("response").string("client_id"));
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    public void testTransientFailureWithoutLookupLeavesTheOutcomeUnknown() {
+        final AtomicInteger creates = new AtomicInteger();
+
+        try {
+            keys.create("recurring.create", "k1", null, lookup -> {
+                creates.incrementAndGet();
+                throw EndpointException.retryable(ErrorCode.TIMEOUT, "Timeout");
+            });
+            fail("The create failed");
+        } catch (EndpointException e) {
+            assertEquals("Timeout", e.getMessage());
+        }
+
+        // the record may exist and cannot be looked up, so it is not created again
+        try {
+            keys.create("recurring.create", "k1", null, lookup -> created(String.valueOf(creates.incrementAndGet())));
+            fail("The outcome of the first call is unknown");
+        } catch (EndpointException e) {
+            assertFalse(e.isRetryable());
+            assertEquals(409, e.getReturnCode());
+        }
+        assertEquals(1, creates.get());
+        assertEquals(1, keys.stats().integer("unknownOutcome").intValue());
+    }
+
+    @Test
+    public void testPermanentFailureWithoutLookupReleasesTheKey() {
+        try {
+            keys.create("recurring.create", "k1", null, lookup -> {
+                throw EndpointException.permanent(ErrorCode.ARGUMENT, "Invalid client").returnCode(400);
+            });
+            fail("The create failed");
+        } catch (EndpointException e) {
+            assertEquals("Invalid client", e.getMessage());
+        }
+
+        final Json response = keys.create("recurring.create", "k1", null, lookup -> created("9"));
+        assertEquals("9", response.json("response").string("client_id"));
+    }
+
+    @Test
+    public void testStalePendingKeyWithoutLookupIsUnknown() {
+        memory.store().save(Json.map()
+                .set("key", "acme:recurring.create:k1")
+                .set("status", "pending")
+                .set("createdAt", now.get())
+                .set("leaseUntil", now.get() + IdempotencyKeys.LEASE));
+        now.addAndGet(IdempotencyKeys.LEASE + 1);
+        final AtomicInteger creates = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                keys.create("recurring.create", "k1", null, lookup -> created(String.valueOf(creates.incrementAndGet())));
+                fail("The call that claimed the key may have created the record");
+            } catch (EndpointException e) {
+                assertFalse(e.isRetryable());
+            }
+        }
+        assertEquals(0, creates.get());
+        assertEquals(0, keys.stats().integer("reclaimed").intValue());
+    }
+}
@@ -0,0 +1,113 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.utils.Json;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the InvoiceAggregator class
+ */
+public class InvoiceAggregatorTest {
+
+    @Test
+    public void testParseGroupBy() throws Exception {
+        assertEquals(Collections.emptyList(), InvoiceAggregator.parseGroupBy(null));
+        assertEquals(Arrays.asList(InvoiceAggregator.GroupBy.CLIENT, InvoiceAggregator.GroupBy.MONTH),
+                InvoiceAggregator.parseGroupBy("client, Month,client"));
+        assertEquals(Collections.singletonList(InvoiceAggregator.GroupBy.CURRENCY),
+                InvoiceAggregator.parseGroupBy(Json.list().push("currency")));
+    }
+
+    @Test(expected = EndpointException.class)
+    public void testInvalidGroupBy() throws Exception {
+        InvoiceAggregator.parseGroupBy("client,country");
+    }
+
+    @Test
+    public void testGroupsByClientAndMonth() throws Exception {
+        final InvoiceAggregator aggregator = new InvoiceAggregator(InvoiceAggregator.parseGroupBy("client,month"));
+        aggregator.add(invoice("13", "2024-03-02 00:00:00", "100.00", "40.00"));
+        aggregator.add(invoice("13", "2024-03-28 00:00:00", "50.50", "0"));
+        aggregator.add(invoice("13", "2024-04-01 00:00:00", "10", "10"));
+        aggregator.add(invoice("7", "2024-03-15 00:00:00", "20.00", null));
+
+        final Json result = aggregator.result();
+        assertEquals(4, (int) result.integer("invoices"));
+        final List<Json> groups = result.jsons("groups");
+        assertEquals(3, groups.size());
+
+        final Json march = groups.get(0);
+        assertEquals("13", march.string("client_id"));
+        assertEquals("Org 13", march.string("organization"));
+        assertEquals("2024-03", march.string("month"));
+        assertEquals(2, (int) march.integer("count"));
+        assertEquals("150.50", march.json("amount").string("sum"));
+        assertEquals("50.50", march.json("amount").string("min"));
+        assertEquals("100.00", march.json("amount").string("max"));
+        assertEquals("40.00", march.json("paid").string("sum"));
+        assertEquals("110.50", march.string("outstanding"));
+
+        final Json other = groups.get(2);
+        assertEquals("7", other.string("client_id"));
+        assertFalse(other.json("paid").contains("sum"));
+        assertEquals("20.00", other.string("outstanding"));
+    }
+
+    @Test
+    public void testSingleGroup() throws Exception {
+        final InvoiceAggregator aggregator = new InvoiceAggregator(Collections.emptyList());
+        aggregator.add(invoice("1", "2024-01-01 00:00:00", "1.10", "1.10"));
+        aggregator.add(invoice("2", "2024-02-01 00:00:00", "2.20", "invalid"));
+
+        final List<Json> groups = aggregator.result().jsons("groups");
+        assertEquals(1, groups.size());
+        assertEquals("3.30", groups.get(0).json("amount").string("sum"));
+        assertEquals("1.10", groups.get(0).json("paid").string("sum"));
+        assertFalse(groups.get(0).contains("client_id"));
+    }
+
+    @Test
+    public void testMergesPartialAggregations() throws Exception {
+        final InvoiceAggregator aggregator = new InvoiceAggregator(InvoiceAggregator.parseGroupBy("client"));
+        final InvoiceAggregator first = aggregator.partial();
+        first.add(invoice("13", "2024-03-02 00:00:00", "100.00", "40.00"));
+        first.add(invoice("7", "2024-03-15 00:00:00", "20.00", null));
+        aggregator.merge(first);
+
+        // a failed page is discarded without being merged
+        final InvoiceAggregator failed = aggregator.partial();
+        failed.add(invoice("13", "2024-04-01 00:00:00", "999", "0"));
+
+        final InvoiceAggregator second = aggregator.partial();
+        second.add(invoice("13", "2024-04-01 00:00:00", "10", "10"));
+        aggregator.merge(second);
+
+        final Json result = aggregator.result();
+        assertEquals(3, (int) result.integer("invoices"));
+        final List<Json> groups = result.jsons("groups");
+        assertEquals(2, groups.size());
+        assertEquals("13", groups.get(0).string("client_id"));
+        assertEquals(2, (int) groups.get(0).integer("count"));
+        assertEquals("110.00", groups.get(0).json("amount").string("sum"));
+        assertEquals("10", groups.get(0).json("amount").string("min"));
+        assertEquals("50.00", groups.get(0).json("paid").string("sum"));
+        assertFalse(groups.get(1).json("paid").contains("sum"));
+    }
+
+    private static Json invoice(String clientId, String date, String amount, String paid) {
+        return Json.map()
+                .set("client_id", clientId)
+                .set("organization", "Org " + clientId)
+                .set("status", "sent")
+                .set("currency_code", "USD")
+                .set("date", date)
+                .set("amount", amount)
+                .setIfNotNull("paid", paid);
+    }
+}
@@ -0,0 +1,112 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the ListPager class
+ */
+public class ListPagerTest {
+
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void init() {
+        executor = WorkerThreads.newPool("pager-test");
+    }
+
+    @AfterClass
+    public static void stop() {
+        WorkerThreads.shutdown(executor);
+    }
+
+    @Test
+    public void testMergesPagesInOrder() {
+        final AtomicInteger calls = new AtomicInteger();
+        final ListPager pager = new ListPager(executor, 3);
+
+        final Json response = pager.fetchAll("invoices", "invoice", page -> {
+            calls.incrementAndGet();
+            return page(page, 5, 2);
+        });
+
+        assertEquals(5, calls.get());
+        final Json invoices = response.json("response").json("invoices");
+        assertEquals("10", invoices.string("@total"));
+        assertEquals("1", invoices.string("@pages"));
+
+        final List<Json> items = invoices.jsons("invoice");
+        assertEquals(10, items.size());
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(String.valueOf(i + 1), items.get(i).string("invoice_id"));
+        }
+    }
+
+    @Test
+    public void testSinglePage() {
+        final ListPager pager = new ListPager(executor, 3);
+        final Json response = pager.fetchAll("invoices", "invoice", page -> page(page, 1, 1));
+        assertEquals(1, response.json("response").json("invoices").jsons("invoice").size());
+    }
+
+    @Test
+    public void testFailedPage() {
+        final ListPager pager = new ListPager(executor, 2);
+        try {
+            pager.fetchAll("invoices", "invoice", page -> {
+                if (page == 3) {
+                    throw EndpointException.permanent(ErrorCode.API, "page failed");
+                }
+                return page(page, 4, 2);
+            });
+            fail("Exception expected");
+        } catch (EndpointException e) {
+            assertEquals("page failed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testStreamsPages() {
+        final ListPager pager = new ListPager(executor, 3);
+        final Set<String> ids = ConcurrentHashMap.newKeySet();
+
+        final Json first = pager.streamAll("invoices", page -> {
+            final Json response = page(page, 6, 3);
+            for (Json invoice : response.json("response").json("invoices").jsons("invoice")) {
+                ids.add(invoice.string("invoice_id"));
+            }
+            return response;
+        });
+
+        assertEquals("1", first.json("response").json("invoices").string("@page"));
+        assertEquals(18, ids.size());
+        assertTrue(ids.contains("18"));
+    }
+
+    private static Json page(int page, int pages, int perPage) {
+        final Json items = Json.list();
+        for (int i = 0; i < perPage; i++) {
+            items.push(Json.map().set("invoice_id", String.valueOf((page - 1) * perPage + i + 1)));
+        }
+        return Json.map().set("response", Json.map()
+                .set("@status", "ok")
+                .set("invoices", Json.map()
+                        .set("@page", String.valueOf(page))
+                        .set("@pages", String.valueOf(pages))
+                        .set("@per_page", String.valueOf(perPage))
+                        .set("@total", String.valueOf(pages * perPage))
+                        .set("invoice", items)));
+    }
+}
@@ -0,0 +1,87 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.services.datastores.DataStore;
+import io.slingr.endpoints.utils.Json;
+
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Data store kept in memory for the tests, it supports the methods used by the endpoint
+ */
+class MemoryDataStore {
+    private final Map<String, Json> documents = new LinkedHashMap<>();
+    private final AtomicInteger ids = new AtomicInteger();
+    private final AtomicInteger saves = new AtomicInteger();
+
+    /**
+     * @return data store backed by this memory
+     */
+    DataStore store() {
+        return (DataStore) Proxy.newProxyInstance(DataStore.class.getClassLoader(), new Class<?>[]{DataStore.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "save":
+                            return save((Json) args[0]);
+                        case "update":
+                            return update((String) args[0], (Json) args[1]);
+                        case "findOne":
+                            return findOne((Json) args[0]);
+                        case "findById":
+                            return findById((String) args[0]);
+                        case "removeById":
+                            return removeById((String) args[0]);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private synchronized Json save(Json document) {
+        saves.incrementAndGet();
+        final String id = String.valueOf(ids.incrementAndGet());
+        documents.put(id, copy(document).set("_id", id));
+        return copy(documents.get(id));
+    }
+
+    private synchronized Json update(String id, Json document) {
+        documents.put(id, copy(document).set("_id", id));
+        return copy(documents.get(id));
+    }
+
+    private synchronized Json findOne(Json filter) {
+        for (Json document : documents.values()) {
+            boolean matches = true;
+            for (String key : filter.keys()) {
+                matches &= String.valueOf(filter.object(key)).equals(document.string(key));
+            }
+            if (matches) {
+                return copy(document);
+            }
+        }
+        return null;
+    }
+
+    private synchronized Json findById(String id) {
+        final Json document = documents.get(id);
+        return document != null ? copy(document) : null;
+    }
+
+    private synchronized boolean removeById(String id) {
+        return documents.remove(id) != null;
+    }
+
+    synchronized int size() {
+        return documents.size();
+    }
+
+    int saves() {
+        return saves.get();
+    }
+
+    private static Json copy(Json document) {
+        return Json.map().merge(document);
+    }
+}
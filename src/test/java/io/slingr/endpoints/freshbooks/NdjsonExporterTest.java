@@ -0,0 +1,113 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the NdjsonExporter class
+ */
+public class NdjsonExporterTest {
+
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void init() {
+        executor = WorkerThreads.newPool("exporter-test");
+    }
+
+    @AfterClass
+    public static void stop() {
+        WorkerThreads.shutdown(executor);
+    }
+
+    @Test
+    public void testWritesLinesInPageOrder() {
+        final NdjsonExporter exporter = new NdjsonExporter(executor, 3, 4);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final AtomicInteger reports = new AtomicInteger();
+
+        final NdjsonExporter.Progress progress = exporter.export("invoices", "invoice", page -> page(page, 7, 3), out,
+                p -> assertEquals(reports.incrementAndGet(), p.writtenPages()));
+
+        final String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertEquals(21, lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            assertTrue(lines[i].contains(String.valueOf(1000 + i)));
+        }
+        assertEquals(21, progress.items());
+        assertEquals(7, progress.writtenPages());
+        assertEquals(7, reports.get());
+        assertEquals(out.size(), progress.bytes());
+    }
+
+    @Test
+    public void testFetchersDoNotGetAheadOfTheWriter() {
+        final int pagesAhead = 2;
+        final NdjsonExporter exporter = new NdjsonExporter(executor, 4, pagesAhead);
+        final AtomicInteger fetched = new AtomicInteger(1);
+        final AtomicInteger written = new AtomicInteger();
+        final AtomicInteger maxAhead = new AtomicInteger();
+
+        exporter.export("invoices", "invoice", page -> {
+            if (page > 1) {
+                maxAhead.accumulateAndGet(fetched.incrementAndGet() - written.get(), Math::max);
+            }
+            return page(page, 20, 1);
+        }, new ByteArrayOutputStream(), p -> {
+            written.set(p.writtenPages());
+            try {
+                // slow writer
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        assertEquals(20, written.get());
+        assertTrue("ahead " + maxAhead.get(), maxAhead.get() <= pagesAhead + 1);
+    }
+
+    @Test
+    public void testFailedPage() {
+        final NdjsonExporter exporter = new NdjsonExporter(executor, 2, 3);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            exporter.export("invoices", "invoice", page -> {
+                if (page == 4) {
+                    throw EndpointException.permanent(ErrorCode.API, "page failed");
+                }
+                return page(page, 10, 2);
+            }, out, null);
+            fail("Exception expected");
+        } catch (EndpointException e) {
+            assertEquals("page failed", e.getMessage());
+        }
+        // the pages before the failed one were written
+        assertEquals(6, new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n").length);
+    }
+
+    private static Json page(int page, int pages, int perPage) {
+        final Json items = Json.list();
+        for (int i = 0; i < perPage; i++) {
+            items.push(Json.map().set("invoice_id", String.valueOf(1000 + (page - 1) * perPage + i)));
+        }
+        return Json.map().set("response", Json.map()
+                .set("@status", "ok")
+                .set("invoices", Json.map()
+                        .set("@page", String.valueOf(page))
+                        .set("@pages", String.valueOf(pages))
+                        .set("@total", String.valueOf(pages * perPage))
+                        .set("invoice", items)));
+    }
+}
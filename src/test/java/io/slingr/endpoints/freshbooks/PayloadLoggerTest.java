@@ -0,0 +1,58 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.utils.Json;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the PayloadLogger class
+ */
+public class PayloadLoggerTest {
+
+    @Test
+    public void testTruncate() {
+        final PayloadLogger payloadLogger = new PayloadLogger(null, PayloadLogger.Mode.FULL, 5, 1);
+        assertEquals("12345", payloadLogger.truncate("12345"));
+        assertEquals("12345... (truncated)", payloadLogger.truncate("1234567"));
+    }
+
+    @Test
+    public void testTruncateRendersUpToTheMaximum() {
+        final Json payload = Json.map()
+                .set("@status", "ok")
+                .set("clients", Json.map().set("client", Json.list()
+                        .push(Json.map().set("client_id", "1").set("notes", "a \"b\""))
+                        .push(Json.map().set("client_id", "2"))));
+        final String text = "{\"@status\":\"ok\",\"clients\":{\"client\":[{\"client_id\":\"1\",\"notes\":\"a \\\"b\\\"\"},{\"client_id\":\"2\"}]}}";
+
+        assertEquals(text, new PayloadLogger(null, PayloadLogger.Mode.FULL, 0, 1).truncate(payload));
+        assertEquals(text, new PayloadLogger(null, PayloadLogger.Mode.FULL, text.length(), 1).truncate(payload));
+        assertEquals(text.substring(0, 30) + "... (truncated)", new PayloadLogger(null, PayloadLogger.Mode.FULL, 30, 1).truncate(payload));
+
+        // the items after the maximum are not rendered
+        final Json items = Json.list();
+        final AtomicInteger rendered = new AtomicInteger();
+        for (int i = 0; i < 1000; i++) {
+            items.push(new Object() {
+                @Override
+                public String toString() {
+                    rendered.incrementAndGet();
+                    return "item";
+                }
+            });
+        }
+        new PayloadLogger(null, PayloadLogger.Mode.FULL, 50, 1).truncate(items);
+        assertTrue(rendered.get() < 10);
+    }
+
+    @Test
+    public void testParseMode() {
+        assertEquals(PayloadLogger.Mode.FULL, PayloadLogger.Mode.parse("full", PayloadLogger.Mode.SUMMARY));
+        assertEquals(PayloadLogger.Mode.OFF, PayloadLogger.Mode.parse(" Off ", PayloadLogger.Mode.SUMMARY));
+        assertEquals(PayloadLogger.Mode.SUMMARY, PayloadLogger.Mode.parse("verbose", PayloadLogger.Mode.SUMMARY));
+        assertEquals(PayloadLogger.Mode.SUMMARY, PayloadLogger.Mode.parse(null, PayloadLogger.Mode.SUMMARY));
+    }
+}
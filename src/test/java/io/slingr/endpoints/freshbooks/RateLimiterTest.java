@@ -0,0 +1,58 @@
+package io.slingr.endpoints.freshbooks;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the RateLimiter class
+ */
+public class RateLimiterTest {
+
+    @Test
+    public void testBurstAndPacing() {
+        final AtomicLong now = new AtomicLong();
+        final RateLimiter limiter = new RateLimiter(10, 2, now::get);
+
+        assertEquals(0, limiter.reserve());
+        assertEquals(0, limiter.reserve());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), limiter.reserve());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), limiter.reserve());
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(0, limiter.reserve());
+    }
+
+    @Test
+    public void testAdaptiveRate() {
+        final AtomicLong now = new AtomicLong();
+        final RateLimiter limiter = new RateLimiter(10, 1, now::get);
+
+        limiter.onThrottled();
+        assertEquals(5d, limiter.currentRate(), 0.001);
+
+        // decreases are limited to one per second
+        limiter.onThrottled();
+        assertEquals(5d, limiter.currentRate(), 0.001);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        limiter.onThrottled();
+        assertTrue(limiter.currentRate() < 5d);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        limiter.reserve();
+        assertEquals(10d, limiter.currentRate(), 0.001);
+    }
+
+    @Test
+    public void testDisabled() {
+        final RateLimiter limiter = new RateLimiter(0, 1);
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire();
+        }
+        assertFalse(limiter.isEnabled());
+    }
+}
@@ -0,0 +1,53 @@
+package io.slingr.endpoints.freshbooks;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the RecentLatency class
+ */
+public class RecentLatencyTest {
+
+    private static void record(RecentLatency latency, int times, long millis) {
+        for (int i = 0; i < times; i++) {
+            latency.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+
+    @Test
+    public void testOldWindowsAreDiscarded() {
+        final AtomicLong now = new AtomicLong(1000);
+        final RecentLatency latency = new RecentLatency(60000, now::get);
+
+        // a slow period
+        record(latency, 50, 2000);
+        assertTrue(latency.percentile(0.95) > 1000);
+
+        // the previous window is still used
+        now.addAndGet(60000);
+        record(latency, 50, 20);
+        assertEquals(100, latency.count());
+        assertTrue(latency.percentile(0.95) > 1000);
+
+        // once it ends, only the fast requests are left
+        now.addAndGet(60000);
+        record(latency, 10, 20);
+        assertEquals(60, latency.count());
+        assertTrue(latency.percentile(0.95) <= 25);
+    }
+
+    @Test
+    public void testIdleWindowsAreEmpty() {
+        final AtomicLong now = new AtomicLong(1000);
+        final RecentLatency latency = new RecentLatency(60000, now::get);
+
+        record(latency, 30, 100);
+        now.addAndGet(120000);
+        assertEquals(0, latency.count());
+        assertEquals(0d, latency.percentile(0.95), 0d);
+    }
+}
@@ -0,0 +1,61 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.utils.Json;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the ResultCompressor class
+ */
+public class ResultCompressorTest {
+
+    @Test
+    public void testLargeResultIsCompressed() throws Exception {
+        final Json invoices = Json.list();
+        for (int i = 0; i < 200; i++) {
+            invoices.push(Json.map().set("invoice_id", String.valueOf(i)).set("status", "draft").set("amount", "10.00"));
+        }
+        final Json result = Json.map().set("invoices", invoices);
+        final ResultCompressor compressor = new ResultCompressor(1024);
+
+        final Json compressed = compressor.compress(result);
+        assertTrue(compressed.bool("compressed"));
+        assertEquals(ResultCompressor.ENCODING, compressed.string("encoding"));
+        final byte[] json = result.toString().getBytes(StandardCharsets.UTF_8);
+        assertEquals(json.length, (int) compressed.integer("size"));
+        assertTrue(compressed.string("data").length() < json.length);
+        assertEquals(result.toString(), gunzip(compressed.string("data")));
+
+        assertEquals(1, compressor.compressed());
+        assertEquals(json.length - compressed.string("data").length(), compressor.savedBytes());
+    }
+
+    @Test
+    public void testSmallResultIsNotCompressed() throws Exception {
+        final Json result = Json.map().set("invoice_id", "1");
+        assertSame(result, new ResultCompressor(1024).compress(result));
+        // disabled
+        assertSame(result, new ResultCompressor(0).compress(result));
+        assertNull(new ResultCompressor(1).compress(null));
+    }
+
+    private static String gunzip(String data) throws Exception {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(data)))) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+import org.junit.Test;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the Retrier and Failures classes
+ */
+public class RetrierTest {
+
+    private final List<Long> sleeps = new ArrayList<>();
+
+    @Test
+    public void testRetriesTransientErrors() {
+        final Retrier retrier = new Retrier(3, 100, 10, sleeps::add, () -> 1d);
+        final AtomicInteger calls = new AtomicInteger();
+
+        final Json response = retrier.execute(() -> {
+            if (calls.incrementAndGet() < 3) {
+                throw EndpointException.retryable(ErrorCode.API, "unavailable").returnCode(503);
+            }
+            return Json.map().set("ok", true);
+        }, null);
+
+        assertTrue(response.bool("ok"));
+        assertEquals(3, calls.get());
+        assertEquals(2, sleeps.size());
+        assertEquals(100L, (long) sleeps.get(0));
+        assertEquals(200L, (long) sleeps.get(1));
+        assertEquals(2L, retrier.retries());
+    }
+
+    @Test
+    public void testDoesNotRetryPermanentErrors() {
+        final Retrier retrier = new Retrier(3, 100, 10, sleeps::add, () -> 1d);
+        final AtomicInteger calls = new AtomicInteger();
+        try {
+            retrier.execute(() -> {
+                calls.incrementAndGet();
+                throw EndpointException.permanent(ErrorCode.API, "not found").returnCode(400);
+            }, null);
+            fail("Exception expected");
+        } catch (EndpointException e) {
+            assertEquals(1, calls.get());
+        }
+    }
+
+    @Test
+    public void testBudget() {
+        final Retrier retrier = new Retrier(2, 0, 0, sleeps::add, () -> 1d);
+        int failures = 0;
+        for (int i = 0; i < 20; i++) {
+            try {
+                retrier.execute(() -> {
+                    throw EndpointException.retryable(ErrorCode.TIMEOUT, "timeout").returnCode(504);
+                }, null);
+            } catch (EndpointException e) {
+                failures++;
+            }
+        }
+        assertEquals(20, failures);
+        assertEquals(10L, retrier.retries());
+        assertEquals(10L, retrier.budgetExhausted());
+    }
+
+    @Test
+    public void testCheckBeforeRetry() {
+        final Retrier retrier = new Retrier(3, 10, 10, sleeps::add, () -> 0.5d);
+        final AtomicInteger calls = new AtomicInteger();
+
+        final Json response = retrier.execute(() -> {
+            calls.incrementAndGet();
+            throw EndpointException.retryable(ErrorCode.TIMEOUT, "timeout");
+        }, () -> Json.map().set("invoice_id", "10"));
+
+        assertEquals("10", response.string("invoice_id"));
+        assertEquals(1, calls.get());
+        assertEquals(5L, (long) sleeps.get(0));
+    }
+
+    @Test
+    public void testClassification() {
+        assertTrue(Failures.isTransientStatus(429));
+        assertTrue(Failures.isTransientStatus(502));
+        assertFalse(Failures.isTransientStatus(404));
+        assertTrue(Failures.isTransient(new RuntimeException(new SocketTimeoutException("read timed out"))));
+        assertFalse(Failures.isTransient(new IllegalArgumentException("invalid")));
+        assertNotNull(Failures.toTransient(new SocketTimeoutException("read timed out")));
+        assertNull(Failures.toTransient(new IllegalStateException("invalid")));
+    }
+}
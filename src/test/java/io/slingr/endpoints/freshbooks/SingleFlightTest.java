@@ -0,0 +1,96 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.utils.Json;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the SingleFlight class
+ */
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentCallsShareTheResponse() throws Exception {
+        final SingleFlight singleFlight = new SingleFlight();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch entered = new CountDownLatch(5);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Json[] responses = new Json[5];
+
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < responses.length; i++) {
+            final int index = i;
+            threads.add(new Thread(() -> {
+                entered.countDown();
+                responses[index] = singleFlight.execute("key", () -> {
+                    calls.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return Json.map().set("ok", true);
+                });
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        // the call is released once the other four threads wait for it
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (singleFlight.shared() < responses.length - 1 && System.nanoTime() < deadline) {
+            Thread.yield();
+        }
+        assertEquals(responses.length - 1, singleFlight.shared());
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, calls.get());
+        for (Json response : responses) {
+            assertSame(responses[0], response);
+        }
+    }
+
+    @Test
+    public void testSequentialCallsAreNotShared() {
+        final SingleFlight singleFlight = new SingleFlight();
+        final AtomicInteger calls = new AtomicInteger();
+
+        singleFlight.execute("key", () -> Json.map().set("call", calls.incrementAndGet()));
+        singleFlight.execute("key", () -> Json.map().set("call", calls.incrementAndGet()));
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testKeyIgnoresTheOrderOfTheFields() {
+        final Json a = Json.map().set("client_id", "1").set("page", 2);
+        final Json b = Json.map().set("page", 2).set("client_id", "1");
+
+        assertEquals(SingleFlight.key("invoice.list", a), SingleFlight.key("invoice.list", b));
+        assertFalse(SingleFlight.key("invoice.list", a).equals(SingleFlight.key("client.list", a)));
+    }
+
+    @Test
+    public void testKeyDoesNotConfuseSeparatorsInValues() {
+        final Json injected = Json.map().set("email", "a,username=b");
+        final Json fields = Json.map().set("email", "a").set("username", "b");
+        assertFalse(SingleFlight.key("client.list", injected).equals(SingleFlight.key("client.list", fields)));
+
+        // a number and the same digits in a string, or a null and the text null, are different
+        assertFalse(SingleFlight.key("client.list", Json.map().set("page", 2)).equals(SingleFlight.key("client.list", Json.map().set("page", "2"))));
+        assertFalse(SingleFlight.key("client.list", Json.map().set("notes", null)).equals(SingleFlight.key("client.list", Json.map().set("notes", "null"))));
+        assertFalse(SingleFlight.key("client.list", Json.map().set("ids", Json.list().push("1,2"))).equals(
+                SingleFlight.key("client.list", Json.map().set("ids", Json.list().push("1").push("2")))));
+    }
+}
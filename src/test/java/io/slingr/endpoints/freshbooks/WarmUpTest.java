@@ -0,0 +1,53 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.utils.Json;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the WarmUp class
+ */
+public class WarmUpTest {
+
+    @Test
+    public void testReadyAfterSteps() {
+        final AtomicLong now = new AtomicLong();
+        final WarmUp warmUp = new WarmUp(now::get);
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1500));
+        warmUp.started();
+        assertFalse(warmUp.isReady());
+        assertEquals(1.5, warmUp.startupSeconds(), 0.001);
+
+        assertTrue(warmUp.step("converters", () -> {
+            now.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+            return 1;
+        }));
+        assertFalse(warmUp.step("main.currencies", () -> {
+            now.addAndGet(TimeUnit.MILLISECONDS.toNanos(300));
+            throw new IllegalStateException("Connection refused");
+        }));
+        assertFalse(warmUp.isReady());
+        assertEquals(0d, warmUp.warmUpSeconds(), 0.001);
+
+        // a failed step does not keep the endpoint from being ready
+        warmUp.finished();
+        assertTrue(warmUp.isReady());
+        assertEquals(0.5, warmUp.warmUpSeconds(), 0.001);
+
+        final Json steps = warmUp.status().json("steps");
+        assertTrue(steps.json("converters").bool("success"));
+        assertEquals(200, steps.json("converters").integer("millis").intValue());
+        assertFalse(steps.json("main.currencies").bool("success"));
+        assertEquals("Connection refused", steps.json("main.currencies").string("error"));
+    }
+
+    @Test
+    public void testPrimeConverters() {
+        assertEquals(1, WarmUp.primeConverters());
+    }
+}
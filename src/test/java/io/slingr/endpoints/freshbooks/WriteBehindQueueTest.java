@@ -0,0 +1,130 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the WriteBehindQueue class
+ */
+public class WriteBehindQueueTest {
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void shutdown() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testMergesUpdatesWithinWindow() throws Exception {
+        final WriteBehindQueue queue = new WriteBehindQueue(scheduler, executor, 10000);
+        final List<Json> sent = Collections.synchronizedList(new ArrayList<>());
+
+        final CompletableFuture<Json> first = queue.update("invoice:1", Json.map().set("invoice_id", "1").set("status", "draft"), fields -> {
+            sent.add(fields);
+            return Json.map().set("updates", sent.size());
+        });
+        final CompletableFuture<Json> second = queue.update("invoice:1", Json.map().set("invoice_id", "1").set("notes", "paid"), fields -> {
+            throw new IllegalStateException("The sender of the first update is used");
+        });
+        final CompletableFuture<Json> third = queue.update("invoice:1", Json.map().set("invoice_id", "1").set("status", "sent"), null);
+        assertEquals(1, queue.pending());
+        assertTrue(sent.isEmpty());
+
+        queue.flush("invoice:1").get(5, TimeUnit.SECONDS);
+        assertEquals(1, WriteBehindQueue.await(first).integer("updates").intValue());
+        assertSame(WriteBehindQueue.await(first), WriteBehindQueue.await(second));
+        assertSame(WriteBehindQueue.await(first), WriteBehindQueue.await(third));
+        assertEquals(1, sent.size());
+        assertEquals("sent", sent.get(0).string("status"));
+        assertEquals("paid", sent.get(0).string("notes"));
+        assertEquals(2, queue.merged());
+        assertEquals(0, queue.pending());
+    }
+
+    @Test
+    public void testKeepsOrderPerRecord() throws Exception {
+        final WriteBehindQueue queue = new WriteBehindQueue(scheduler, executor, 10000);
+        final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final CompletableFuture<Json> first = queue.update("client:7", Json.map().set("first_name", "Ann"), fields -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sent.add(fields.string("first_name"));
+            return Json.map();
+        });
+        queue.flush("client:7");
+
+        // the first batch is being sent, this one waits for it
+        final CompletableFuture<Json> second = queue.update("client:7", Json.map().set("first_name", "Anna"), fields -> {
+            sent.add(fields.string("first_name"));
+            return Json.map();
+        });
+        final CompletableFuture<Void> flushed = queue.flush("client:7");
+        Thread.sleep(50);
+        assertTrue(sent.isEmpty());
+        assertFalse(second.isDone());
+
+        release.countDown();
+        flushed.get(5, TimeUnit.SECONDS);
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+        assertEquals(2, sent.size());
+        assertEquals("Ann", sent.get(0));
+        assertEquals("Anna", sent.get(1));
+    }
+
+    @Test
+    public void testFlushSendsBeforeWindow() throws Exception {
+        final WriteBehindQueue queue = new WriteBehindQueue(scheduler, executor, 10000);
+
+        final CompletableFuture<Json> update = queue.update("recurring:3", Json.map().set("notes", "x"), fields -> Json.map().set("ok", true));
+        assertEquals(1, queue.pending());
+
+        queue.flush("recurring:3").get(5, TimeUnit.SECONDS);
+        assertTrue(update.isDone());
+        assertEquals(0, queue.pending());
+        assertEquals(1, queue.sent());
+    }
+
+    @Test
+    public void testFailureReachesAllCallers() throws Exception {
+        final WriteBehindQueue queue = new WriteBehindQueue(scheduler, executor, 10000);
+
+        final CompletableFuture<Json> first = queue.update("invoice:2", Json.map().set("status", "sent"), fields -> {
+            throw EndpointException.permanent(ErrorCode.API, "FreshBooks error");
+        });
+        final CompletableFuture<Json> second = queue.update("invoice:2", Json.map().set("notes", "x"), null);
+        queue.flush("invoice:2").get(5, TimeUnit.SECONDS);
+
+        for (CompletableFuture<Json> response : Arrays.asList(first, second)) {
+            try {
+                WriteBehindQueue.await(response);
+                fail("The update failed");
+            } catch (EndpointException e) {
+                assertEquals("FreshBooks error", e.getMessage());
+            }
+        }
+    }
+}
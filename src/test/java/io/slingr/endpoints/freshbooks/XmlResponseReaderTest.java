@@ -0,0 +1,162 @@
+package io.slingr.endpoints.freshbooks;
+
+import io.slingr.endpoints.utils.Json;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Test over the XmlResponseReader and XmlRequestWriter classes
+ */
+public class XmlResponseReaderTest {
+
+    private static final String LIST = "<?xml version=\"1.0\" encoding=\"utf-8\"?>" +
+            "<response xmlns=\"http://www.freshbooks.com/api/\" status=\"ok\">" +
+            "<invoices page=\"1\" per_page=\"10\" pages=\"4\" total=\"33\">" +
+            "<invoice><invoice_id>344</invoice_id><amount>45.00</amount>" +
+            "<lines><line><name>A</name></line><line><name>B</name></line></lines></invoice>" +
+            "<invoice><invoice_id>345</invoice_id><amount>10.00</amount><notes/></invoice>" +
+            "</invoices></response>";
+
+    private static final String FAIL = "<?xml version=\"1.0\" encoding=\"utf-8\"?>" +
+            "<response xmlns=\"http://www.freshbooks.com/api/\" status=\"fail\">" +
+            "<error>Invoice not found.</error><code>50010</code></response>";
+
+    @Test
+    public void testListItemsInResponse() throws Exception {
+        final Json response = XmlResponseReader.read(stream(LIST), "invoices", "invoice", null).json("response");
+        assertEquals("ok", response.string("@status"));
+
+        final Json invoices = response.json("invoices");
+        assertEquals("33", invoices.string("@total"));
+
+        final List<Json> items = invoices.jsons("invoice");
+        assertEquals(2, items.size());
+        assertEquals("344", items.get(0).string("invoice_id"));
+        assertEquals(2, items.get(0).json("lines").jsons("line").size());
+        assertEquals("", items.get(1).string("notes"));
+    }
+
+    @Test
+    public void testListShapeOfTheFrameworkConverter() throws Exception {
+        final String single = "<?xml version=\"1.0\" encoding=\"utf-8\"?>" +
+                "<response xmlns=\"http://www.freshbooks.com/api/\" status=\"ok\">" +
+                "<clients page=\"1\" per_page=\"10\" pages=\"1\" total=\"1\">" +
+                "<client><client_id>13</client_id><notes/></client></clients></response>";
+        final Json one = XmlResponseReader.read(stream(single), "clients", "client", null).json("response");
+        assertEquals(Json.map()
+                .set("@status", "ok")
+                .set("clients", Json.map()
+                        .set("@page", "1")
+                        .set("@per_page", "10")
+                        .set("@pages", "1")
+                        .set("@total", "1")
+                        .set("client", Json.map()
+                                .set("client_id", "13")
+                                .set("notes", ""))).toString(), one.toString());
+
+        final String empty = "<?xml version=\"1.0\" encoding=\"utf-8\"?>" +
+                "<response xmlns=\"http://www.freshbooks.com/api/\" status=\"ok\">" +
+                "<clients page=\"1\" per_page=\"10\" pages=\"0\" total=\"0\"/></response>";
+        final Json none = XmlResponseReader.read(stream(empty), "clients", "client", null).json("response");
+        assertEquals(Json.map()
+                .set("@status", "ok")
+                .set("clients", Json.map()
+                        .set("@page", "1")
+                        .set("@per_page", "10")
+                        .set("@pages", "0")
+                        .set("@total", "0")).toString(), none.toString());
+    }
+
+    @Test
+    public void testListItemsInCallback() throws Exception {
+        final List<String> ids = new ArrayList<>();
+        final Json response = XmlResponseReader.read(stream(LIST), "invoices", "invoice",
+                item -> ids.add(item.string("invoice_id"))).json("response");
+
+        assertEquals(2, ids.size());
+        assertEquals("345", ids.get(1));
+        assertEquals("4", response.json("invoices").string("@pages"));
+        assertFalse(response.json("invoices").contains("invoice"));
+    }
+
+    @Test
+    public void testListWithProjection() throws Exception {
+        final FieldProjection projection = FieldProjection.parse("invoices.invoice.*.invoice_id, invoices.invoice.*.lines");
+        final Json response = XmlResponseReader.read(stream(LIST), "invoices", "invoice", null, projection).json("response");
+        assertEquals("ok", response.string("@status"));
+
+        final Json invoices = response.json("invoices");
+        assertEquals("4", invoices.string("@pages"));
+        final List<Json> items = invoices.jsons("invoice");
+        assertEquals(2, items.size());
+        assertEquals("344", items.get(0).string("invoice_id"));
+        assertFalse(items.get(0).contains("amount"));
+        assertEquals(2, items.get(0).json("lines").jsons("line").size());
+        assertEquals(Json.map().set("invoice_id", "345").toString(), items.get(1).toString());
+
+        final Json failed = XmlResponseReader.read(stream(FAIL), "invoices", "invoice", null, projection).json("response");
+        assertEquals("Invoice not found.", failed.string("error"));
+    }
+
+    @Test
+    public void testFailedResponse() throws Exception {
+        final Json response = XmlResponseReader.read(stream(FAIL), "invoices", "invoice", null).json("response");
+        assertEquals("fail", response.string("@status"));
+        assertEquals("Invoice not found.", response.string("error"));
+    }
+
+    @Test
+    public void testRequestRoundTrip() throws Exception {
+        final Json body = Json.map()
+                .set("invoice", Json.map()
+                        .set("client_id", "13")
+                        .set("notes", "Fish & <chips>")
+                        .set("lines", Json.map().set("line", Json.list()
+                                .push(Json.map().set("name", "A"))
+                                .push(Json.map().set("name", "B")))));
+
+        final String xml = new String(XmlRequestWriter.write("invoice.create", body), StandardCharsets.UTF_8);
+        assertTrue(xml.contains("<request method=\"invoice.create\">"));
+
+        final Json request = XmlResponseReader.read(stream(xml)).json("request");
+        assertEquals("invoice.create", request.string("@method"));
+        assertEquals("Fish & <chips>", request.json("invoice").string("notes"));
+        assertEquals(2, request.json("invoice").json("lines").jsons("line").size());
+    }
+
+    @Test
+    public void testRequestWithEnvelope() throws Exception {
+        final Json invoice = Json.map()
+                .set("client_id", "13")
+                .set("lines", Json.map().set("line", Json.list()
+                        .push(Json.map().set("name", "A"))
+                        .push(Json.map().set("name", "B"))));
+
+        final String xml = new String(XmlRequestWriter.write(Operation.INVOICE_CREATE.envelope(), invoice), StandardCharsets.UTF_8);
+        assertEquals(new String(XmlRequestWriter.write("invoice.create", Json.map().set("invoice", invoice)), StandardCharsets.UTF_8), xml);
+
+        final String empty = new String(XmlRequestWriter.write(Operation.CURRENCY_LIST.envelope(), null), StandardCharsets.UTF_8);
+        assertEquals("currency.list", XmlResponseReader.read(stream(empty)).json("request").string("@method"));
+    }
+
+    @Test
+    public void testRequestWithEnvelopeAndAttributes() throws Exception {
+        final Json invoice = Json.map().set("@type", "draft").set("client_id", "13");
+
+        final String xml = new String(XmlRequestWriter.write(Operation.INVOICE_CREATE.envelope(), invoice), StandardCharsets.UTF_8);
+        final Json request = XmlResponseReader.read(stream(xml)).json("request");
+        assertEquals("draft", request.json("invoice").string("@type"));
+        assertEquals("13", request.json("invoice").string("client_id"));
+    }
+
+    private static InputStream stream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+}